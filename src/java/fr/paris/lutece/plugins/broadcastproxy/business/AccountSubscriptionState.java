@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.business;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Subscriptions of a user to one account, as cached : the ids of the subscribed subscriptions and the date they have been fetched. Instances are
+ * immutable.
+ */
+public final class AccountSubscriptionState implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final int [ ] _arrSubscriptionIds;
+    private final long _lFetchTime;
+
+    /**
+     * Constructor
+     * 
+     * @param arrSubscriptionIds
+     *            the ids of the subscribed subscriptions, in any order
+     * @param lFetchTime
+     *            the date the subscriptions have been fetched from the provider, in milliseconds
+     */
+    public AccountSubscriptionState( int [ ] arrSubscriptionIds, long lFetchTime )
+    {
+        _arrSubscriptionIds = arrSubscriptionIds.clone( );
+        Arrays.sort( _arrSubscriptionIds );
+        _lFetchTime = lFetchTime;
+    }
+
+    /**
+     * Returns the ids of the subscribed subscriptions
+     * 
+     * @return the sorted ids
+     */
+    public int [ ] getSubscriptionIds( )
+    {
+        return _arrSubscriptionIds.clone( );
+    }
+
+    /**
+     * Tells if the user is subscribed to at least one subscription of the account
+     * 
+     * @return true if the user is subscribed
+     */
+    public boolean isSubscribed( )
+    {
+        return _arrSubscriptionIds.length > 0;
+    }
+
+    /**
+     * Tells if the user is subscribed to a subscription
+     * 
+     * @param nSubscriptionId
+     *            the subscription id
+     * @return true if the user is subscribed
+     */
+    public boolean isSubscribed( int nSubscriptionId )
+    {
+        return Arrays.binarySearch( _arrSubscriptionIds, nSubscriptionId ) >= 0;
+    }
+
+    /**
+     * Returns the date the subscriptions have been fetched from the provider
+     * 
+     * @return the date in milliseconds
+     */
+    public long getFetchTime( )
+    {
+        return _lFetchTime;
+    }
+
+    /**
+     * Get a copy of this state with a subscription subscribed or unsubscribed
+     * 
+     * @param nSubscriptionId
+     *            the subscription id
+     * @param bSubscribed
+     *            true if the user is subscribed
+     * @return the new state
+     */
+    public AccountSubscriptionState withSubscription( int nSubscriptionId, boolean bSubscribed )
+    {
+        if ( isSubscribed( nSubscriptionId ) == bSubscribed )
+        {
+            return this;
+        }
+
+        int [ ] arrSubscriptionIds;
+        if ( bSubscribed )
+        {
+            arrSubscriptionIds = Arrays.copyOf( _arrSubscriptionIds, _arrSubscriptionIds.length + 1 );
+            arrSubscriptionIds [_arrSubscriptionIds.length] = nSubscriptionId;
+        }
+        else
+        {
+            arrSubscriptionIds = Arrays.stream( _arrSubscriptionIds ).filter( nId -> nId != nSubscriptionId ).toArray( );
+        }
+
+        return new AccountSubscriptionState( arrSubscriptionIds, _lFetchTime );
+    }
+
+    /**
+     * Get a copy of this state with other subscriptions
+     * 
+     * @param arrSubscriptionIds
+     *            the ids of the subscribed subscriptions
+     * @return the new state
+     */
+    public AccountSubscriptionState withSubscriptions( int [ ] arrSubscriptionIds )
+    {
+        return new AccountSubscriptionState( arrSubscriptionIds, _lFetchTime );
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class provides Data Access methods for CacheInvalidation objects
+ */
+public final class CacheInvalidationDAO implements ICacheInvalidationDAO
+{
+    // Constants
+    private static final String SQL_QUERY_SELECT_SINCE = "SELECT id_cache_invalidation, user_id, account_id, node_id, date_creation FROM broadcastproxy_cache_invalidation WHERE date_creation >= ? ORDER BY date_creation, id_cache_invalidation";
+    private static final String SQL_QUERY_INSERT = "INSERT INTO broadcastproxy_cache_invalidation ( user_id, account_id, node_id, date_creation ) VALUES ( ?, ?, ?, ? ) ";
+    private static final String SQL_QUERY_DELETE_BEFORE = "DELETE FROM broadcastproxy_cache_invalidation WHERE date_creation < ? ";
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void insert( CacheInvalidation cacheInvalidation, Plugin plugin )
+    {
+        try( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, plugin ) )
+        {
+            int nIndex = 1;
+            daoUtil.setString( nIndex++ , cacheInvalidation.getUserId( ) );
+            daoUtil.setString( nIndex++ , cacheInvalidation.getAccountId( ) );
+            daoUtil.setString( nIndex++ , cacheInvalidation.getNodeId( ) );
+            daoUtil.setTimestamp( nIndex , cacheInvalidation.getDateCreation( ) );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void deleteBefore( Timestamp dateLimit, Plugin plugin )
+    {
+        try( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_BEFORE, plugin ) )
+        {
+            daoUtil.setTimestamp( 1 , dateLimit );
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public List<CacheInvalidation> selectSince( Timestamp dateSince, Plugin plugin )
+    {
+        List<CacheInvalidation> listInvalidations = new ArrayList<>( );
+        try( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_SINCE, plugin ) )
+        {
+            daoUtil.setTimestamp( 1 , dateSince );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                CacheInvalidation cacheInvalidation = new CacheInvalidation( );
+                int nIndex = 1;
+
+                cacheInvalidation.setId( daoUtil.getInt( nIndex++ ) );
+                cacheInvalidation.setUserId( daoUtil.getString( nIndex++ ) );
+                cacheInvalidation.setAccountId( daoUtil.getString( nIndex++ ) );
+                cacheInvalidation.setNodeId( daoUtil.getString( nIndex++ ) );
+                cacheInvalidation.setDateCreation( daoUtil.getTimestamp( nIndex ) );
+
+                listInvalidations.add( cacheInvalidation );
+            }
+
+            return listInvalidations;
+        }
+    }
+}
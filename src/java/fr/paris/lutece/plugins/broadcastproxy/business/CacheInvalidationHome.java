@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.plugin.PluginService;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * This class provides instances management methods (create, find, purge) for CacheInvalidation objects
+ */
+public final class CacheInvalidationHome
+{
+    // Static variable pointed at the DAO instance
+    private static ICacheInvalidationDAO _dao = SpringContextService.getBean( "broadcastproxy.cacheInvalidationDAO" );
+    private static Plugin _plugin = PluginService.getPlugin( "broadcastproxy" );
+
+    /**
+     * Private constructor - this class need not be instantiated
+     */
+    private CacheInvalidationHome( )
+    {
+    }
+
+    /**
+     * Create an instance of the cacheInvalidation class
+     * @param cacheInvalidation The instance of the CacheInvalidation which contains the informations to store
+     * @return The instance of cacheInvalidation which has been created
+     */
+    public static CacheInvalidation create( CacheInvalidation cacheInvalidation )
+    {
+        _dao.insert( cacheInvalidation, _plugin );
+
+        return cacheInvalidation;
+    }
+
+    /**
+     * Remove the invalidations created before a date
+     * @param dateLimit The date
+     */
+    public static void removeBefore( Timestamp dateLimit )
+    {
+        _dao.deleteBefore( dateLimit, _plugin );
+    }
+
+    /**
+     * Load the invalidations created since a date
+     * @param dateSince The date
+     * @return the list of the invalidations, ordered by date
+     */
+    public static List<CacheInvalidation> findSince( Timestamp dateSince )
+    {
+        return _dao.selectSince( dateSince, _plugin );
+    }
+}
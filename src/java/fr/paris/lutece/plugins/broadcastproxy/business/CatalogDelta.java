@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.business;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Structural changes between two versions of the catalog of an account
+ */
+public class CatalogDelta implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String _strAccountId;
+    private final Collection<CatalogItem> _listItems;
+    private final List<CatalogItem> _listAdded = new ArrayList<>( );
+    private final List<CatalogItem> _listRemoved = new ArrayList<>( );
+    private final List<CatalogItem> _listRenamed = new ArrayList<>( );
+    private final List<CatalogItem> _listDisabled = new ArrayList<>( );
+    private final List<CatalogItem> _listEnabled = new ArrayList<>( );
+
+    /**
+     * Constructor
+     * 
+     * @param strAccountId
+     *            the account of the catalog
+     * @param listItems
+     *            all the items of the new catalog
+     */
+    public CatalogDelta( String strAccountId, Collection<CatalogItem> listItems )
+    {
+        _strAccountId = strAccountId;
+        _listItems = listItems;
+    }
+
+    /**
+     * Returns the account of the catalog
+     * @return the account id
+     */
+    public String getAccountId( )
+    {
+        return _strAccountId;
+    }
+
+    /**
+     * Returns all the items of the new catalog
+     * @return the items
+     */
+    public Collection<CatalogItem> getItems( )
+    {
+        return Collections.unmodifiableCollection( _listItems );
+    }
+
+    /**
+     * Returns the items that were not in the previous catalog
+     * @return the added items
+     */
+    public List<CatalogItem> getAdded( )
+    {
+        return _listAdded;
+    }
+
+    /**
+     * Returns the items that are no longer in the catalog
+     * @return the removed items, as they were in the previous catalog
+     */
+    public List<CatalogItem> getRemoved( )
+    {
+        return _listRemoved;
+    }
+
+    /**
+     * Returns the items whose name has changed
+     * @return the renamed items, with their new name
+     */
+    public List<CatalogItem> getRenamed( )
+    {
+        return _listRenamed;
+    }
+
+    /**
+     * Returns the items that have been disabled
+     * @return the disabled items
+     */
+    public List<CatalogItem> getDisabled( )
+    {
+        return _listDisabled;
+    }
+
+    /**
+     * Returns the items that have been enabled again
+     * @return the enabled items
+     */
+    public List<CatalogItem> getEnabled( )
+    {
+        return _listEnabled;
+    }
+
+    /**
+     * Tells if the catalog has structurally changed
+     * @return true if there is no change
+     */
+    public boolean isEmpty( )
+    {
+        return _listAdded.isEmpty( ) && _listRemoved.isEmpty( ) && _listRenamed.isEmpty( ) && _listDisabled.isEmpty( ) && _listEnabled.isEmpty( );
+    }
+
+    @Override
+    public String toString( )
+    {
+        return "account " + _strAccountId + " : " + _listAdded.size( ) + " added, " + _listRemoved.size( ) + " removed, " + _listRenamed.size( )
+                + " renamed, " + _listDisabled.size( ) + " disabled, " + _listEnabled.size( ) + " enabled";
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.business;
+
+import java.io.Serializable;
+
+/**
+ * This is the business class for the object CatalogItem : a subscription or an interest of a provider catalog
+ */
+public class CatalogItem implements Serializable
+{
+    public static final String TYPE_SUBSCRIPTION = "SUBSCRIPTION";
+    public static final String TYPE_INTEREST = "INTEREST";
+
+    private static final long serialVersionUID = 1L;
+
+    // Variables declarations
+    private String _strType;
+
+    private int _nId;
+
+    private String _strName;
+
+    private int _nGroupId;
+
+    private String _strGroupName;
+
+    private boolean _bEnabled;
+
+    /**
+     * Returns the key of the item in its catalog
+     * @return The type and the id of the item
+     */
+    public String getKey( )
+    {
+        return _strType + ":" + _nId;
+    }
+
+    /**
+     * Returns the Type
+     * @return The Type
+     */
+    public String getType( )
+    {
+        return _strType;
+    }
+
+    /**
+     * Sets the Type
+     * @param strType The Type
+     */
+    public void setType( String strType )
+    {
+        _strType = strType;
+    }
+
+    /**
+     * Returns the Id
+     * @return The Id
+     */
+    public int getId( )
+    {
+        return _nId;
+    }
+
+    /**
+     * Sets the Id
+     * @param nId The Id
+     */
+    public void setId( int nId )
+    {
+        _nId = nId;
+    }
+
+    /**
+     * Returns the Name
+     * @return The Name
+     */
+    public String getName( )
+    {
+        return _strName;
+    }
+
+    /**
+     * Sets the Name
+     * @param strName The Name
+     */
+    public void setName( String strName )
+    {
+        _strName = strName;
+    }
+
+    /**
+     * Returns the GroupId
+     * @return The GroupId
+     */
+    public int getGroupId( )
+    {
+        return _nGroupId;
+    }
+
+    /**
+     * Sets the GroupId
+     * @param nGroupId The GroupId
+     */
+    public void setGroupId( int nGroupId )
+    {
+        _nGroupId = nGroupId;
+    }
+
+    /**
+     * Returns the GroupName
+     * @return The GroupName
+     */
+    public String getGroupName( )
+    {
+        return _strGroupName;
+    }
+
+    /**
+     * Sets the GroupName
+     * @param strGroupName The GroupName
+     */
+    public void setGroupName( String strGroupName )
+    {
+        _strGroupName = strGroupName;
+    }
+
+    /**
+     * Returns the Enabled
+     * @return The Enabled
+     */
+    public boolean isEnabled( )
+    {
+        return _bEnabled;
+    }
+
+    /**
+     * Sets the Enabled
+     * @param bEnabled The Enabled
+     */
+    public void setEnabled( boolean bEnabled )
+    {
+        _bEnabled = bEnabled;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.business;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+/**
+ * This is the business class for the object CatalogSnapshot : the last good catalog (subscriptions and interests) fetched from the provider for an
+ * account
+ */
+public class CatalogSnapshot implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    // Variables declarations
+    private String _strAccountId;
+
+    private String _strSubscriptions;
+
+    private String _strInterests;
+
+    private String _strFingerprint;
+
+    private Timestamp _dateUpdate;
+
+    /**
+     * Returns the AccountId
+     * @return The AccountId
+     */
+    public String getAccountId( )
+    {
+        return _strAccountId;
+    }
+
+    /**
+     * Sets the AccountId
+     * @param strAccountId The AccountId
+     */
+    public void setAccountId( String strAccountId )
+    {
+        _strAccountId = strAccountId;
+    }
+
+    /**
+     * Returns the Subscriptions catalog as returned by the provider
+     * @return The Subscriptions
+     */
+    public String getSubscriptions( )
+    {
+        return _strSubscriptions;
+    }
+
+    /**
+     * Sets the Subscriptions catalog
+     * @param strSubscriptions The Subscriptions
+     */
+    public void setSubscriptions( String strSubscriptions )
+    {
+        _strSubscriptions = strSubscriptions;
+    }
+
+    /**
+     * Returns the Interests catalog as returned by the provider
+     * @return The Interests
+     */
+    public String getInterests( )
+    {
+        return _strInterests;
+    }
+
+    /**
+     * Sets the Interests catalog
+     * @param strInterests The Interests
+     */
+    public void setInterests( String strInterests )
+    {
+        _strInterests = strInterests;
+    }
+
+    /**
+     * Returns the DateUpdate
+     * @return The DateUpdate
+     */
+    public Timestamp getDateUpdate( )
+    {
+        return _dateUpdate;
+    }
+
+    /**
+     * Sets the DateUpdate
+     * @param dateUpdate The DateUpdate
+     */
+    public void setDateUpdate( Timestamp dateUpdate )
+    {
+        _dateUpdate = dateUpdate;
+    }
+
+    /**
+     * Returns the Fingerprint of the subscriptions and interests catalogs
+     * @return The Fingerprint
+     */
+    public String getFingerprint( )
+    {
+        return _strFingerprint;
+    }
+
+    /**
+     * Sets the Fingerprint
+     * @param strFingerprint The Fingerprint
+     */
+    public void setFingerprint( String strFingerprint )
+    {
+        _strFingerprint = strFingerprint;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+
+package fr.paris.lutece.plugins.broadcastproxy.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * This class provides Data Access methods for CatalogSnapshot objects
+ */
+public final class CatalogSnapshotDAO implements ICatalogSnapshotDAO
+{
+    // Constants
+    private static final String SQL_QUERY_SELECT = "SELECT account_id, subscriptions, interests, fingerprint, date_update FROM broadcastproxy_catalog_snapshot WHERE account_id = ?";
+    private static final String SQL_QUERY_INSERT = "INSERT INTO broadcastproxy_catalog_snapshot ( account_id, subscriptions, interests, fingerprint, date_update ) VALUES ( ?, ?, ?, ?, ? ) ";
+    private static final String SQL_QUERY_UPDATE = "UPDATE broadcastproxy_catalog_snapshot SET subscriptions = ?, interests = ?, fingerprint = ?, date_update = ? WHERE account_id = ?";
+    private static final String SQL_QUERY_SELECTALL = "SELECT account_id, subscriptions, interests, fingerprint, date_update FROM broadcastproxy_catalog_snapshot";
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void insert( CatalogSnapshot catalogSnapshot, Plugin plugin )
+    {
+        try( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, plugin ) )
+        {
+            int nIndex = 1;
+            daoUtil.setString( nIndex++ , catalogSnapshot.getAccountId( ) );
+            daoUtil.setString( nIndex++ , catalogSnapshot.getSubscriptions( ) );
+            daoUtil.setString( nIndex++ , catalogSnapshot.getInterests( ) );
+            daoUtil.setString( nIndex++ , catalogSnapshot.getFingerprint( ) );
+            daoUtil.setTimestamp( nIndex , catalogSnapshot.getDateUpdate( ) );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void store( CatalogSnapshot catalogSnapshot, Plugin plugin )
+    {
+        try( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_UPDATE, plugin ) )
+        {
+            int nIndex = 1;
+            daoUtil.setString( nIndex++ , catalogSnapshot.getSubscriptions( ) );
+            daoUtil.setString( nIndex++ , catalogSnapshot.getInterests( ) );
+            daoUtil.setString( nIndex++ , catalogSnapshot.getFingerprint( ) );
+            daoUtil.setTimestamp( nIndex++ , catalogSnapshot.getDateUpdate( ) );
+            daoUtil.setString( nIndex , catalogSnapshot.getAccountId( ) );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public Optional<CatalogSnapshot> load( String strAccountId, Plugin plugin )
+    {
+        try( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT, plugin ) )
+        {
+            daoUtil.setString( 1 , strAccountId );
+            daoUtil.executeQuery( );
+            CatalogSnapshot catalogSnapshot = null;
+
+            if ( daoUtil.next( ) )
+            {
+                catalogSnapshot = dataToObject( daoUtil );
+            }
+
+            return Optional.ofNullable( catalogSnapshot );
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public List<CatalogSnapshot> selectCatalogSnapshotsList( Plugin plugin )
+    {
+        List<CatalogSnapshot> catalogSnapshotList = new ArrayList<>( );
+        try( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECTALL, plugin ) )
+        {
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                catalogSnapshotList.add( dataToObject( daoUtil ) );
+            }
+
+            return catalogSnapshotList;
+        }
+    }
+
+    /**
+     * Build a CatalogSnapshot from the current row
+     * @param daoUtil the daoUtil
+     * @return the catalogSnapshot
+     */
+    private CatalogSnapshot dataToObject( DAOUtil daoUtil )
+    {
+        CatalogSnapshot catalogSnapshot = new CatalogSnapshot( );
+        int nIndex = 1;
+
+        catalogSnapshot.setAccountId( daoUtil.getString( nIndex++ ) );
+        catalogSnapshot.setSubscriptions( daoUtil.getString( nIndex++ ) );
+        catalogSnapshot.setInterests( daoUtil.getString( nIndex++ ) );
+        catalogSnapshot.setFingerprint( daoUtil.getString( nIndex++ ) );
+        catalogSnapshot.setDateUpdate( daoUtil.getTimestamp( nIndex ) );
+
+        return catalogSnapshot;
+    }
+}
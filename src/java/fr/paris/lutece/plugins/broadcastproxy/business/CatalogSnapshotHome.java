@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+
+package fr.paris.lutece.plugins.broadcastproxy.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.plugin.PluginService;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * This class provides instances management methods (save, find, ...) for CatalogSnapshot objects
+ */
+public final class CatalogSnapshotHome
+{
+    // Static variable pointed at the DAO instance
+    private static ICatalogSnapshotDAO _dao = SpringContextService.getBean( "broadcastproxy.catalogSnapshotDAO" );
+    private static Plugin _plugin = PluginService.getPlugin( "broadcastproxy" );
+
+    /**
+     * Private constructor - this class need not be instantiated
+     */
+    private CatalogSnapshotHome( )
+    {
+    }
+
+    /**
+     * Save the snapshot of an account : the existing one is replaced
+     * @param catalogSnapshot The instance of the CatalogSnapshot which contains the informations to store
+     * @return The instance of catalogSnapshot which has been saved
+     */
+    public static CatalogSnapshot save( CatalogSnapshot catalogSnapshot )
+    {
+        if ( _dao.load( catalogSnapshot.getAccountId( ), _plugin ).isPresent( ) )
+        {
+            _dao.store( catalogSnapshot, _plugin );
+        }
+        else
+        {
+            _dao.insert( catalogSnapshot, _plugin );
+        }
+
+        return catalogSnapshot;
+    }
+
+    /**
+     * Returns the snapshot of the account specified in parameter
+     * @param strAccountId The account id
+     * @return an instance of CatalogSnapshot
+     */
+    public static Optional<CatalogSnapshot> findByAccountId( String strAccountId )
+    {
+        return _dao.load( strAccountId, _plugin );
+    }
+
+    /**
+     * Load the data of all the catalogSnapshot objects and returns them as a list
+     * @return the list which contains the data of all the catalogSnapshot objects
+     */
+    public static List<CatalogSnapshot> getCatalogSnapshotsList( )
+    {
+        return _dao.selectCatalogSnapshotsList( _plugin );
+    }
+}
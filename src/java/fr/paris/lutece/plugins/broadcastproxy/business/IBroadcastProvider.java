@@ -67,6 +67,31 @@ public interface IBroadcastProvider
      * @throws java.lang.Exception
      */
     boolean updateArrondissementSubscribtions( String userId, String jsonSubscriptions, String strAccountId ) throws Exception;
+
+    /**
+     * update several user subscriptions of an account at once : the default implementation updates them one by one
+     * 
+     * @param userId
+     * @param subscriptionsToUpdate
+     *            the subscription ids, with true to subscribe and false to unsubscribe
+     * @param strAccountId
+     * @return true if success
+     * @throws java.lang.Exception
+     */
+    @SuppressWarnings( "unchecked" )
+    default boolean updateSubscribtions( String userId, Map<Integer, Boolean> subscriptionsToUpdate, String strAccountId ) throws Exception
+    {
+        boolean bUpdated = true;
+        for ( Map.Entry<Integer, Boolean> sub : subscriptionsToUpdate.entrySet( ) )
+        {
+            JSONObject json = new JSONObject( );
+            json.put( "id", sub.getKey( ) );
+            json.put( "active", sub.getValue( ) );
+            bUpdated &= updateSubscribtions( userId, json.toJSONString( ), strAccountId );
+        }
+
+        return bUpdated;
+    }
     
     /**
      * update user subscriptions to the specified subscription list
@@ -108,7 +133,7 @@ public interface IBroadcastProvider
      * get user subscriptions ids
      * @param strUserId
      * @param strAccountId
-     * @return list of user subscription ids
+     * @return list of user subscription ids, null if they could not be retrieved
      */
     List<JSONObject> getUserSubscriptionIds ( String strUserId, String strAccountId );
 
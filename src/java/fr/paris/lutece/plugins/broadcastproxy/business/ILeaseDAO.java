@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import java.sql.Timestamp;
+import java.util.Optional;
+
+/**
+ * ILeaseDAO Interface
+ */
+public interface ILeaseDAO
+{
+    /**
+     * Insert a new record in the table.
+     * @param lease instance of the Lease object to insert
+     * @param plugin the Plugin
+     */
+    void insert( Lease lease, Plugin plugin );
+
+    /**
+     * Give the lease to its new owner if it is free : the record is updated only if the lease is already held by this owner or has expired
+     * @param lease the lease with its new owner and expiration
+     * @param dateNow the current date
+     * @param plugin the Plugin
+     * @return true if the record has been updated, i.e. the owner holds the lease
+     */
+    boolean acquire( Lease lease, Timestamp dateNow, Plugin plugin );
+
+    /**
+     * Make a lease expire now if it is held by the given owner
+     * @param strName The name of the lease
+     * @param strOwner The owner of the lease
+     * @param dateNow the current date
+     * @param plugin the Plugin
+     */
+    void release( String strName, String strOwner, Timestamp dateNow, Plugin plugin );
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Finders
+
+    /**
+     * Load the data from the table
+     * @param strName The name of the lease
+     * @param plugin the Plugin
+     * @return The instance of the lease
+     */
+    Optional<Lease> load( String strName, Plugin plugin );
+}
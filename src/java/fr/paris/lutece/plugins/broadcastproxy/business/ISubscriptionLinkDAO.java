@@ -58,6 +58,20 @@ public interface ISubscriptionLinkDAO
      */
     void store( SubscriptionLink subscriptionLink, Plugin plugin );
 
+    /**
+     * Insert new records in the table with a single batch statement, the generated keys are not retrieved
+     * @param listSubscriptionLinks the SubscriptionLink objects to insert
+     * @param plugin the Plugin
+     */
+    void insertBatch( List<SubscriptionLink> listSubscriptionLinks, Plugin plugin );
+
+    /**
+     * Update records in the table with a single batch statement
+     * @param listSubscriptionLinks the SubscriptionLink objects to update
+     * @param plugin the Plugin
+     */
+    void storeBatch( List<SubscriptionLink> listSubscriptionLinks, Plugin plugin );
+
     /**
      * Delete a record from the table
      * @param nKey The identifier of the SubscriptionLink to delete
@@ -112,6 +126,14 @@ public interface ISubscriptionLinkDAO
      * @return The list which contains the data of all the avant objects
      */
 	List<SubscriptionLink> selectSubscriptionLinksListByIds( Plugin _plugin, List<Integer> listIds );
+
+    /**
+     * Load the subscription links of a list of subscriptions with a single query
+     * @param listSubscriptionIds the subscription ids
+     * @param plugin the Plugin
+     * @return The list of the subscription links
+     */
+    List<SubscriptionLink> selectSubscriptionLinksListBySubscriptionIds( List<Integer> listSubscriptionIds, Plugin plugin );
 	
 	/**
 	 * Return true if exist disabled newsletter
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+import java.sql.Timestamp;
+import java.util.Optional;
+
+/**
+ * This class provides Data Access methods for Lease objects
+ */
+public final class LeaseDAO implements ILeaseDAO
+{
+    // Constants
+    private static final String SQL_QUERY_SELECT = "SELECT name, owner, date_expiration FROM broadcastproxy_lease WHERE name = ?";
+    private static final String SQL_QUERY_INSERT = "INSERT INTO broadcastproxy_lease ( name, owner, date_expiration ) VALUES ( ?, ?, ? ) ";
+    private static final String SQL_QUERY_ACQUIRE = "UPDATE broadcastproxy_lease SET owner = ?, date_expiration = ? WHERE name = ? AND ( owner = ? OR date_expiration < ? )";
+    private static final String SQL_QUERY_RELEASE = "UPDATE broadcastproxy_lease SET date_expiration = ? WHERE name = ? AND owner = ?";
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void insert( Lease lease, Plugin plugin )
+    {
+        try( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, plugin ) )
+        {
+            int nIndex = 1;
+            daoUtil.setString( nIndex++ , lease.getName( ) );
+            daoUtil.setString( nIndex++ , lease.getOwner( ) );
+            daoUtil.setTimestamp( nIndex , lease.getDateExpiration( ) );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public boolean acquire( Lease lease, Timestamp dateNow, Plugin plugin )
+    {
+        try( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_ACQUIRE, plugin ) )
+        {
+            int nIndex = 1;
+            daoUtil.setString( nIndex++ , lease.getOwner( ) );
+            daoUtil.setTimestamp( nIndex++ , lease.getDateExpiration( ) );
+            daoUtil.setString( nIndex++ , lease.getName( ) );
+            daoUtil.setString( nIndex++ , lease.getOwner( ) );
+            daoUtil.setTimestamp( nIndex , dateNow );
+
+            return daoUtil.executeUpdate( ) > 0;
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void release( String strName, String strOwner, Timestamp dateNow, Plugin plugin )
+    {
+        try( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_RELEASE, plugin ) )
+        {
+            int nIndex = 1;
+            daoUtil.setTimestamp( nIndex++ , dateNow );
+            daoUtil.setString( nIndex++ , strName );
+            daoUtil.setString( nIndex , strOwner );
+
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public Optional<Lease> load( String strName, Plugin plugin )
+    {
+        try( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT, plugin ) )
+        {
+            daoUtil.setString( 1 , strName );
+            daoUtil.executeQuery( );
+            Lease lease = null;
+
+            if ( daoUtil.next( ) )
+            {
+                lease = new Lease( );
+                int nIndex = 1;
+
+                lease.setName( daoUtil.getString( nIndex++ ) );
+                lease.setOwner( daoUtil.getString( nIndex++ ) );
+                lease.setDateExpiration( daoUtil.getTimestamp( nIndex ) );
+            }
+
+            return Optional.ofNullable( lease );
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.plugin.PluginService;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+import java.sql.Timestamp;
+import java.util.Optional;
+
+/**
+ * This class provides instances management methods (acquire, release, find) for Lease objects
+ */
+public final class LeaseHome
+{
+    // Static variable pointed at the DAO instance
+    private static ILeaseDAO _dao = SpringContextService.getBean( "broadcastproxy.leaseDAO" );
+    private static Plugin _plugin = PluginService.getPlugin( "broadcastproxy" );
+
+    /**
+     * Private constructor - this class need not be instantiated
+     */
+    private LeaseHome( )
+    {
+    }
+
+    /**
+     * Try to acquire or renew a lease : the lease is given to the owner only if it is free, expired or already held by this owner. The nodes must have
+     * synchronized clocks.
+     * @param strName The lease name
+     * @param strOwner The candidate owner
+     * @param dateExpiration The expiration of the lease if it is acquired
+     * @return true if the owner holds the lease
+     */
+    public static boolean acquire( String strName, String strOwner, Timestamp dateExpiration )
+    {
+        Lease lease = new Lease( );
+        lease.setName( strName );
+        lease.setOwner( strOwner );
+        lease.setDateExpiration( dateExpiration );
+
+        // The conditional update tells if the lease is held, the lease is only read when it is not
+        if ( _dao.acquire( lease, new Timestamp( System.currentTimeMillis( ) ), _plugin ) )
+        {
+            return true;
+        }
+
+        if ( _dao.load( strName, _plugin ).isPresent( ) )
+        {
+            // Held by another node
+            return false;
+        }
+
+        try
+        {
+            _dao.insert( lease, _plugin );
+            return true;
+        }
+        catch( Exception e )
+        {
+            // Another node has created the lease at the same time
+            AppLogService.debug( "Lease " + strName + " created by another node : " + e.getMessage( ) );
+            return false;
+        }
+    }
+
+    /**
+     * Release a lease held by an owner, so that another node can acquire it at once
+     * @param strName The lease name
+     * @param strOwner The owner of the lease
+     */
+    public static void release( String strName, String strOwner )
+    {
+        _dao.release( strName, strOwner, new Timestamp( System.currentTimeMillis( ) ), _plugin );
+    }
+
+    /**
+     * Returns the lease whose name is specified in parameter
+     * @param strName The lease name
+     * @return an instance of Lease
+     */
+    public static Optional<Lease> findByName( String strName )
+    {
+        return _dao.load( strName, _plugin );
+    }
+}
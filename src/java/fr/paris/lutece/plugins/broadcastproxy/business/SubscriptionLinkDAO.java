@@ -58,6 +58,7 @@ public final class SubscriptionLinkDAO implements ISubscriptionLinkDAO
     private static final String SQL_QUERY_SELECTALL = "SELECT id_subscription_link, label, pictogramme, description, frequency, subscription_group, group_id, subscription_id, interest_id, enabled FROM broadcastproxy_subscription_link ORDER BY label asc";
     private static final String SQL_QUERY_SELECTALL_ID = "SELECT id_subscription_link FROM broadcastproxy_subscription_link";
     private static final String SQL_QUERY_SELECTALL_BY_IDS = "SELECT id_subscription_link, label, pictogramme, description, frequency, subscription_group, group_id, subscription_id, interest_id, enabled FROM broadcastproxy_subscription_link WHERE id_subscription_link IN (  ";
+    private static final String SQL_QUERY_SELECTALL_BY_SUBSCRIPTION_IDS = "SELECT id_subscription_link, label, pictogramme, description, frequency, subscription_group, group_id, subscription_id, interest_id, enabled FROM broadcastproxy_subscription_link WHERE subscription_id IN ( ";
     private static final String SQL_QUERY_DISABLE_NEWSLETTER = "SELECT id_subscription_link FROM broadcastproxy_subscription_link WHERE enabled = 0";
     
     /**
@@ -68,16 +69,7 @@ public final class SubscriptionLinkDAO implements ISubscriptionLinkDAO
     {
         try( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, Statement.RETURN_GENERATED_KEYS, plugin ) )
         {
-            int nIndex = 1;
-            daoUtil.setString( nIndex++ , subscriptionLink.getLabel( ) );
-            daoUtil.setString( nIndex++ , subscriptionLink.getPictogramme( ) );
-            daoUtil.setString( nIndex++ , subscriptionLink.getDescription( ) );
-            daoUtil.setString( nIndex++ , subscriptionLink.getFrequency( ) );
-            daoUtil.setString( nIndex++ , subscriptionLink.getGroup( ) );
-            daoUtil.setInt( nIndex++ , subscriptionLink.getGroupId( ) );
-            daoUtil.setInt( nIndex++ , subscriptionLink.getSubscriptionId( ) );
-            daoUtil.setInt( nIndex++ , subscriptionLink.getInterestId( ) );
-            daoUtil.setBoolean( nIndex++, subscriptionLink.isEnabled( ) );
+            setData( daoUtil, subscriptionLink );
             
             daoUtil.executeUpdate( );
             if ( daoUtil.nextGeneratedKey( ) ) 
@@ -88,6 +80,65 @@ public final class SubscriptionLinkDAO implements ISubscriptionLinkDAO
         
     }
 
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void insertBatch( List<SubscriptionLink> listSubscriptionLinks, Plugin plugin )
+    {
+        try( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, plugin ) )
+        {
+            for ( SubscriptionLink subscriptionLink : listSubscriptionLinks )
+            {
+                setData( daoUtil, subscriptionLink );
+                daoUtil.addBatch( );
+            }
+
+            daoUtil.executeBatch( );
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void storeBatch( List<SubscriptionLink> listSubscriptionLinks, Plugin plugin )
+    {
+        try( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_UPDATE, plugin ) )
+        {
+            for ( SubscriptionLink subscriptionLink : listSubscriptionLinks )
+            {
+                int nIndex = setData( daoUtil, subscriptionLink );
+                daoUtil.setInt( nIndex, subscriptionLink.getId( ) );
+                daoUtil.addBatch( );
+            }
+
+            daoUtil.executeBatch( );
+        }
+    }
+
+    /**
+     * Set the columns of a subscription link, in the order of the insert and update queries
+     * @param daoUtil the daoUtil
+     * @param subscriptionLink the subscription link
+     * @return the index of the next parameter
+     */
+    private int setData( DAOUtil daoUtil, SubscriptionLink subscriptionLink )
+    {
+        int nIndex = 1;
+        daoUtil.setString( nIndex++ , subscriptionLink.getLabel( ) );
+        daoUtil.setString( nIndex++ , subscriptionLink.getPictogramme( ) );
+        daoUtil.setString( nIndex++ , subscriptionLink.getDescription( ) );
+        daoUtil.setString( nIndex++ , subscriptionLink.getFrequency( ) );
+        daoUtil.setString( nIndex++ , subscriptionLink.getGroup( ) );
+        daoUtil.setInt( nIndex++ , subscriptionLink.getGroupId( ) );
+        daoUtil.setInt( nIndex++ , subscriptionLink.getSubscriptionId( ) );
+        daoUtil.setInt( nIndex++ , subscriptionLink.getInterestId( ) );
+        daoUtil.setBoolean( nIndex++, subscriptionLink.isEnabled( ) );
+
+        return nIndex;
+    }
+
     /**
      * {@inheritDoc }
      */
@@ -142,20 +193,10 @@ public final class SubscriptionLinkDAO implements ISubscriptionLinkDAO
     {
         try( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_UPDATE, plugin ) )
         {
-	        int nIndex = 1;
-	        
-        	daoUtil.setString( nIndex++ , subscriptionLink.getLabel( ) );
-        	daoUtil.setString( nIndex++ , subscriptionLink.getPictogramme( ) );
-        	daoUtil.setString( nIndex++ , subscriptionLink.getDescription( ) );
-        	daoUtil.setString( nIndex++ , subscriptionLink.getFrequency( ) );
-        	daoUtil.setString( nIndex++ , subscriptionLink.getGroup( ) );
-            daoUtil.setInt( nIndex++ , subscriptionLink.getGroupId( ) );
-        	daoUtil.setInt( nIndex++ , subscriptionLink.getSubscriptionId( ) );
-        	daoUtil.setInt( nIndex++ , subscriptionLink.getInterestId( ) );
-            daoUtil.setBoolean( nIndex++, subscriptionLink.isEnabled( ) );
-	        daoUtil.setInt( nIndex++ , subscriptionLink.getId( ) );
-	
-	        daoUtil.executeUpdate( );
+            int nIndex = setData( daoUtil, subscriptionLink );
+            daoUtil.setInt( nIndex, subscriptionLink.getId( ) );
+
+            daoUtil.executeUpdate( );
         }
     }
 
@@ -287,6 +328,58 @@ public final class SubscriptionLinkDAO implements ISubscriptionLinkDAO
 		
 	}
 
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public List<SubscriptionLink> selectSubscriptionLinksListBySubscriptionIds( List<Integer> listSubscriptionIds, Plugin plugin )
+    {
+        List<SubscriptionLink> subscriptionLinkList = new ArrayList<>( );
+
+        if ( listSubscriptionIds.isEmpty( ) )
+        {
+            return subscriptionLinkList;
+        }
+
+        StringBuilder builder = new StringBuilder( SQL_QUERY_SELECTALL_BY_SUBSCRIPTION_IDS );
+        for ( int i = 0; i < listSubscriptionIds.size( ); i++ )
+        {
+            builder.append( i == 0 ? "?" : ",?" );
+        }
+        builder.append( ")" );
+
+        try( DAOUtil daoUtil = new DAOUtil( builder.toString( ), plugin ) )
+        {
+            int index = 1;
+            for ( Integer n : listSubscriptionIds )
+            {
+                daoUtil.setInt( index++, n );
+            }
+
+            daoUtil.executeQuery( );
+            while ( daoUtil.next( ) )
+            {
+                SubscriptionLink subscriptionLink = new SubscriptionLink( );
+                int nIndex = 1;
+
+                subscriptionLink.setId( daoUtil.getInt( nIndex++ ) );
+                subscriptionLink.setLabel( daoUtil.getString( nIndex++ ) );
+                subscriptionLink.setPictogramme( daoUtil.getString( nIndex++ ) );
+                subscriptionLink.setDescription( daoUtil.getString( nIndex++ ) );
+                subscriptionLink.setFrequency( daoUtil.getString( nIndex++ ) );
+                subscriptionLink.setGroup( daoUtil.getString( nIndex++ ) );
+                subscriptionLink.setGroupId( daoUtil.getInt( nIndex++ ) );
+                subscriptionLink.setSubscriptionId( daoUtil.getInt( nIndex++ ) );
+                subscriptionLink.setInterestId( daoUtil.getInt( nIndex++ ) );
+                subscriptionLink.setEnabled( daoUtil.getBoolean( nIndex ) );
+
+                subscriptionLinkList.add( subscriptionLink );
+            }
+        }
+
+        return subscriptionLinkList;
+    }
+
     @Override
     public Optional<SubscriptionLink> loadBySubscriptionId( int nSubscriptionId, Plugin plugin )
     {
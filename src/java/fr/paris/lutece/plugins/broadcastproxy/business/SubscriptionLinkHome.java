@@ -39,9 +39,12 @@ import fr.paris.lutece.portal.service.plugin.Plugin;
 import fr.paris.lutece.portal.service.plugin.PluginService;
 import fr.paris.lutece.portal.service.spring.SpringContextService;
 import fr.paris.lutece.util.ReferenceList;
+import fr.paris.lutece.util.sql.TransactionManager;
 
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -84,6 +87,40 @@ public final class SubscriptionLinkHome
         return subscriptionLink;
     }
 
+    /**
+     * Create and update subscriptionLinks in a single transaction, with one batch statement for each operation
+     * @param listCreate the subscriptionLinks to create
+     * @param listUpdate the subscriptionLinks to update
+     */
+    public static void synchronize( List<SubscriptionLink> listCreate, List<SubscriptionLink> listUpdate )
+    {
+        if ( listCreate.isEmpty( ) && listUpdate.isEmpty( ) )
+        {
+            return;
+        }
+
+        TransactionManager.beginTransaction( _plugin );
+
+        try
+        {
+            if ( !listCreate.isEmpty( ) )
+            {
+                _dao.insertBatch( listCreate, _plugin );
+            }
+            if ( !listUpdate.isEmpty( ) )
+            {
+                _dao.storeBatch( listUpdate, _plugin );
+            }
+
+            TransactionManager.commitTransaction( _plugin );
+        }
+        catch( RuntimeException e )
+        {
+            TransactionManager.rollBack( _plugin, e );
+            throw e;
+        }
+    }
+
     /**
      * Remove the subscriptionLink whose identifier is specified in parameter
      * @param nKey The subscriptionLink Id
@@ -113,6 +150,22 @@ public final class SubscriptionLinkHome
         return _dao.loadBySubscriptionId( nSubscriptionId, _plugin );
     }
     
+    /**
+     * Returns the subscriptionLinks of a list of subscriptions, loaded with a single query
+     * @param listSubscriptionIds The subscription ids
+     * @return the subscriptionLinks by subscription id
+     */
+    public static Map<Integer, SubscriptionLink> findBySubscriptionIds( List<Integer> listSubscriptionIds )
+    {
+        Map<Integer, SubscriptionLink> mapLinks = new HashMap<>( );
+        for ( SubscriptionLink subscriptionLink : _dao.selectSubscriptionLinksListBySubscriptionIds( listSubscriptionIds, _plugin ) )
+        {
+            mapLinks.putIfAbsent( subscriptionLink.getSubscriptionId( ), subscriptionLink );
+        }
+
+        return mapLinks;
+    }
+
     /**
      * Load the data of all the subscriptionLink objects and returns them as a list
      * @return the list which contains the data of all the subscriptionLink objects
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.business;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Subscriptions of a user, assembled from the cached state of each account : the ids of the subscribed newsletters of the default account, a bit
+ * per subscribed arrondissement account and the date of the last fetch of each account. Instances are immutable.
+ */
+public final class UserSubscriptionState implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int [ ] _arrNewsletterIds;
+    private final long _lArrondissementMask;
+    private final long [ ] _arrFetchTimes;
+
+    /**
+     * Constructor
+     * 
+     * @param arrNewsletterIds
+     *            the ids of the subscribed newsletters, in any order
+     * @param lArrondissementMask
+     *            the subscribed arrondissements : bit n is set if the user is subscribed to the arrondissement n
+     * @param arrFetchTimes
+     *            the date of the last fetch of each account : the default account first, then the arrondissements
+     */
+    public UserSubscriptionState( int [ ] arrNewsletterIds, long lArrondissementMask, long [ ] arrFetchTimes )
+    {
+        _arrNewsletterIds = arrNewsletterIds.clone( );
+        Arrays.sort( _arrNewsletterIds );
+        _lArrondissementMask = lArrondissementMask;
+        _arrFetchTimes = arrFetchTimes.clone( );
+    }
+
+    /**
+     * Returns the ids of the subscribed newsletters
+     * 
+     * @return the sorted ids
+     */
+    public int [ ] getNewsletterIds( )
+    {
+        return _arrNewsletterIds.clone( );
+    }
+
+    /**
+     * Tells if the user is subscribed to a newsletter
+     * 
+     * @param nNewsletterId
+     *            the newsletter id
+     * @return true if the user is subscribed
+     */
+    public boolean isSubscribed( int nNewsletterId )
+    {
+        return Arrays.binarySearch( _arrNewsletterIds, nNewsletterId ) >= 0;
+    }
+
+    /**
+     * Returns the subscribed arrondissements
+     * 
+     * @return the mask, bit n is set if the user is subscribed to the arrondissement n
+     */
+    public long getArrondissementMask( )
+    {
+        return _lArrondissementMask;
+    }
+
+    /**
+     * Tells if the user is subscribed to an arrondissement
+     * 
+     * @param nArrondissement
+     *            the index of the arrondissement
+     * @return true if the user is subscribed
+     */
+    public boolean isArrondissementSubscribed( int nArrondissement )
+    {
+        return nArrondissement < Long.SIZE && ( _lArrondissementMask & ( 1L << nArrondissement ) ) != 0;
+    }
+
+    /**
+     * Returns the version of the subscriptions : two states with the same subscriptions have the same version, whatever the node or the date of
+     * their fetch
+     * 
+     * @return the version, a hash of the subscriptions
+     */
+    public long getVersion( )
+    {
+        long lVersion = FNV_OFFSET_BASIS;
+        for ( int nId : _arrNewsletterIds )
+        {
+            lVersion = ( lVersion ^ nId ) * FNV_PRIME;
+        }
+
+        return ( lVersion ^ _lArrondissementMask ) * FNV_PRIME;
+    }
+
+    /**
+     * Returns the date of the last fetch of an account
+     * 
+     * @param nAccount
+     *            the index of the account : 0 for the default account, n + 1 for the arrondissement n
+     * @return the date in milliseconds, 0 if the account has not been fetched
+     */
+    public long getFetchTime( int nAccount )
+    {
+        return nAccount < _arrFetchTimes.length ? _arrFetchTimes [nAccount] : 0;
+    }
+}
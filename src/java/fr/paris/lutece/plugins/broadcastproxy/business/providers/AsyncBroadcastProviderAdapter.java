@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.business.providers;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.json.simple.JSONObject;
+
+import fr.paris.lutece.plugins.broadcastproxy.business.Feed;
+import fr.paris.lutece.plugins.broadcastproxy.business.IAsyncBroadcastProvider;
+import fr.paris.lutece.plugins.broadcastproxy.business.IBroadcastProvider;
+import fr.paris.lutece.plugins.broadcastproxy.business.Subscription;
+
+/**
+ * Exposes a synchronous {@link IBroadcastProvider} as an {@link IAsyncBroadcastProvider} : each call is run on the given executor so that the caller
+ * thread is never blocked by the provider.
+ */
+public class AsyncBroadcastProviderAdapter implements IAsyncBroadcastProvider
+{
+    private final IBroadcastProvider _provider;
+    private final Executor _executor;
+
+    /**
+     * Constructor
+     * 
+     * @param provider
+     *            the synchronous provider to wrap
+     * @param executor
+     *            the executor running the provider calls
+     */
+    public AsyncBroadcastProviderAdapter( IBroadcastProvider provider, Executor executor )
+    {
+        _provider = provider;
+        _executor = executor;
+    }
+
+    @Override
+    public String getName( )
+    {
+        return _provider.getName( );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateSubscribtionsAsync( String userId, String jsonSubscriptions, String strAccountId )
+    {
+        return supply( ( ) -> _provider.updateSubscribtions( userId, jsonSubscriptions, strAccountId ) );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateArrondissementSubscribtionsAsync( String userId, String jsonSubscriptions, String strAccountId )
+    {
+        return supply( ( ) -> _provider.updateArrondissementSubscribtions( userId, jsonSubscriptions, strAccountId ) );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateSubscribtionsAsync( String userId, List<Subscription> subscriptionsList )
+    {
+        return supply( ( ) -> _provider.updateSubscribtions( userId, subscriptionsList ) );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateAsync( Subscription subscription, String strAccountId )
+    {
+        return supply( ( ) -> _provider.update( subscription, strAccountId ) );
+    }
+
+    @Override
+    public CompletableFuture<List<Feed>> getFeedsAsync( )
+    {
+        return supply( _provider::getFeeds );
+    }
+
+    @Override
+    public CompletableFuture<String> getAllSubscriptionByGroupAsync( String typeSubscription, String strAccountId )
+    {
+        return supply( ( ) -> _provider.getAllSubscriptionByGroup( typeSubscription, strAccountId ) );
+    }
+
+    @Override
+    public CompletableFuture<List<JSONObject>> getUserSubscriptionIdsAsync( String strUserId, String strAccountId )
+    {
+        return supply( ( ) -> _provider.getUserSubscriptionIds( strUserId, strAccountId ) );
+    }
+
+    /**
+     * Run a provider call on the executor, checked exceptions and a rejection by the saturated executor complete the future exceptionally
+     * 
+     * @param call
+     *            the provider call
+     * @return the future of the call
+     */
+    private <T> CompletableFuture<T> supply( Callable<T> call )
+    {
+        try
+        {
+            return CompletableFuture.supplyAsync( ( ) -> {
+                try
+                {
+                    return call.call( );
+                }
+                catch( Exception e )
+                {
+                    throw new CompletionException( e );
+                }
+            }, _executor );
+        }
+        catch( RejectedExecutionException e )
+        {
+            CompletableFuture<T> future = new CompletableFuture<>( );
+            future.completeExceptionally( e );
+            return future;
+        }
+    }
+}
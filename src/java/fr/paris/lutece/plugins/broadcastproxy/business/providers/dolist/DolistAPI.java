@@ -44,6 +44,7 @@ import org.apache.commons.lang3.StringUtils;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import fr.paris.lutece.plugins.broadcastproxy.service.BoundedCache;
 import fr.paris.lutece.portal.service.util.AppLogService;
 import fr.paris.lutece.portal.service.util.AppPropertiesService;
 import fr.paris.lutece.util.httpaccess.HttpAccess;
@@ -96,10 +97,10 @@ public class DolistAPI
     private static final String JSON_NODE_SEARCH_NAME = AppPropertiesService.getProperty( "dolist.jsonNode.item.Name" );
     private static final String JSON_NODE_FIELD_LIST = AppPropertiesService.getProperty( "dolist.jsonNode.FieldList" );
 
-    // Instance variables
-    private String _userEmail;
-    private String _contactId;
-    private String _accountId;
+    private static final String CACHE_CONTACT_IDS = "contactIds";
+
+    // Instance variables : resolved contact ids, by account and email, removed when a request using them fails (merged or deleted contact)
+    private final BoundedCache<String, String> _contactIds = BoundedCache.create( CACHE_CONTACT_IDS, 100000, 3600 );
 
     /**
      * get ContactID
@@ -114,8 +115,9 @@ public class DolistAPI
         if ( userEmail == null )
             return null;        
 
-        if ( userEmail.equals( _userEmail ) && strAccountId.equals( _accountId ) )
-            return _contactId;
+        String strCachedContactId = _contactIds.get( getContactKey( userEmail, strAccountId ) );
+        if ( strCachedContactId != null )
+            return strCachedContactId;
 
         ObjectMapper mapper = new ObjectMapper( );
         Map<String, Object> queryParams = new HashMap<>( );
@@ -150,9 +152,7 @@ public class DolistAPI
                 }
 
                 // set instance variables
-                _userEmail = userEmail;
-                _contactId = strContactId;
-                _accountId = strAccountId;
+                _contactIds.put( getContactKey( userEmail, strAccountId ), strContactId );
             }
 //            else if ( Integer.parseInt( nodes.get( "Count" ).asText( ) ) > 1 ) // There is some accounts with the same email
 //            {
@@ -223,8 +223,10 @@ public class DolistAPI
         }
 
         // set instance variables
-        _userEmail = userEmail;
-        _contactId = strContactId;
+        if ( StringUtils.isNotEmpty( strContactId ) )
+        {
+            _contactIds.put( getContactKey( userEmail, strAccountId ), strContactId );
+        }
 
         return strContactId;
     }
@@ -314,9 +316,15 @@ public class DolistAPI
 
             strResponse = callDoGet( strUrl, mapHeaders );
 
+            if ( StringUtils.isEmpty( strResponse ) )
+            {
+                // Rejected by Dolist
+                removeContactId( userEmail, strAccountId );
+            }
         }
         catch( IOException e )
         {
+            removeContactId( userEmail, strAccountId );
             String strError = "Error occured while getting Contact subscriptions list from '" + strUrl + "' : " + e.getMessage( );
             AppLogService.error( strError + e.getMessage( ), e );
             throw new Exception( strError );
@@ -366,9 +374,15 @@ public class DolistAPI
         String strParamsInJson = "{ \"" + CONSTANTE_REQUEST_BODY_SUBSCRIPTIONS_LIST + "\":" + mapper.writeValueAsString( listModifiedSubscriptions ) + "}";
 
         // Call http method (PUT)
-        String response = callDoPut( strUrl, strParamsInJson, mapHeaders );
-
-        return response;
+        try
+        {
+            return callDoPut( strUrl, strParamsInJson, mapHeaders );
+        }
+        catch( IOException | HttpAccessException e )
+        {
+            removeContactId( userEmail, strAccountId );
+            throw e;
+        }
     }
 
     public String updateInterests( String userEmail, List<Integer> subscriptionsToUpdate, String action, String strAccountId ) throws Exception
@@ -398,8 +412,14 @@ public class DolistAPI
             response = callDoPut( strUrl, strParamsInJson, mapHeaders );
 
         }
+        catch( HttpAccessException e )
+        {
+            removeContactId( userEmail, strAccountId );
+            throw e;
+        }
         catch( IOException e )
         {
+            removeContactId( userEmail, strAccountId );
             String strError = "Error connecting to '" + strUrl + "' : " + e.getMessage( );
             AppLogService.error( strError + e.getMessage( ), e );
             throw new Exception( strError );
@@ -489,4 +509,30 @@ public class DolistAPI
         return mapHeader;
     }
     
+    /**
+     * Remove the cached contact id of a user for an account, so that it is resolved again by the next request
+     * 
+     * @param strUserEmail
+     * @param strAccountId
+     */
+    private void removeContactId( String strUserEmail, String strAccountId )
+    {
+        if ( strUserEmail != null )
+        {
+            _contactIds.remove( getContactKey( strUserEmail, strAccountId ) );
+        }
+    }
+
+    /**
+     * Returns the key of the contact id of a user for an account
+     * 
+     * @param strUserEmail
+     * @param strAccountId
+     * @return the key
+     */
+    private static String getContactKey( String strUserEmail, String strAccountId )
+    {
+        return strAccountId + '\n' + strUserEmail;
+    }
+
 }
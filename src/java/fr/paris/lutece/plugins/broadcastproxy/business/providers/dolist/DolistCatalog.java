@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.business.providers.dolist;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.paris.lutece.plugins.broadcastproxy.business.CatalogItem;
+import fr.paris.lutece.plugins.broadcastproxy.business.CatalogSnapshot;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Ids and names of the Dolist subscriptions, interests and groups of an account, parsed once from a catalog snapshot. Instances are immutable and can
+ * be shared by concurrent calls.
+ */
+public final class DolistCatalog
+{
+    // Constants
+    private static final String JSON_NODE_ITEMLIST = AppPropertiesService.getProperty( "dolist.jsonNode.ItemList" );
+    private static final String JSON_NODE_ITEM_INTERESTLIST = AppPropertiesService.getProperty( "dolist.jsonNode.item.InterestList" );
+    private static final String JSON_NODE_ITEM_GROUP = AppPropertiesService.getProperty( "dolist.jsonNode.item.Group" );
+    private static final String JSON_NODE_INTEREST_NAME = AppPropertiesService.getProperty( "dolist.jsonNode.interest.Name" );
+    private static final String JSON_NODE_INTEREST_IS_ACTIVE = AppPropertiesService.getProperty( "dolist.jsonNode.interest.isActive" );
+    private static final String JSON_NODE_GROUP_NAME = AppPropertiesService.getProperty( "dolist.jsonNode.group.Name" );
+    private static final String JSON_NODE_SUB_NAME = AppPropertiesService.getProperty( "dolist.jsonNode.sub.Name" );
+
+    private final CatalogSnapshot _snapshot;
+    private final Map<String, String> _subscriptionsMapIdName = new HashMap<>( );
+    private final Map<String, String> _interestsMapIdName = new HashMap<>( );
+    private final Map<String, String> _groupedInterestsMapIdName = new HashMap<>( );
+    private final Map<String, String> _groupsMapIdName = new HashMap<>( );
+    private final TreeMap<Integer, String> _groupViewRang = new TreeMap<>( );
+    private final List<CatalogItem> _listItems = new ArrayList<>( );
+
+    /**
+     * Constructor
+     * 
+     * @param snapshot
+     *            the catalog snapshot to parse
+     */
+    public DolistCatalog( CatalogSnapshot snapshot )
+    {
+        _snapshot = snapshot;
+
+        if ( snapshot != null )
+        {
+            parseSubscriptions( snapshot.getSubscriptions( ) );
+            parseInterests( snapshot.getInterests( ) );
+        }
+    }
+
+    /**
+     * Get subscriptions data (id and name)
+     * 
+     * @param subscriptionsInJson
+     *            the subscriptions catalog
+     */
+    private void parseSubscriptions( String subscriptionsInJson )
+    {
+        if ( StringUtils.isEmpty( subscriptionsInJson ) )
+        {
+            return;
+        }
+
+        try
+        {
+            JsonNode itemListNode = new ObjectMapper( ).readTree( subscriptionsInJson ).get( JSON_NODE_ITEMLIST );
+
+            if ( itemListNode != null )
+            {
+                for ( JsonNode node : itemListNode )
+                {
+                    boolean bEnabled = node.get( "IsEnabled" ).asBoolean( );
+                    if ( bEnabled )
+                    {
+                        _subscriptionsMapIdName.put( node.get( "ID" ).asText( ), node.get( JSON_NODE_SUB_NAME ).asText( ) );
+                    }
+
+                    _listItems.add( buildItem( CatalogItem.TYPE_SUBSCRIPTION, node, node.get( JSON_NODE_SUB_NAME ).asText( ), 0, null, bEnabled ) );
+                }
+            }
+        }
+        catch( Exception e )
+        {
+            String strError = "Error occured while mapping Ids and Names of subscriptions.";
+            AppLogService.error( strError + e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Get interests data (id and name) and groups data
+     * 
+     * @param interestsInJson
+     *            the interests catalog
+     */
+    private void parseInterests( String interestsInJson )
+    {
+        if ( StringUtils.isEmpty( interestsInJson ) )
+        {
+            return;
+        }
+
+        try
+        {
+            JsonNode itemListNode = new ObjectMapper( ).readTree( interestsInJson ).get( JSON_NODE_ITEMLIST );
+
+            if ( itemListNode == null )
+            {
+                return;
+            }
+
+            for ( JsonNode node : itemListNode )
+            {
+                String strGroupName = getGroupName( node.get( JSON_NODE_ITEM_GROUP ) );
+                String strItemGroupName = getItemGroupName( node.get( JSON_NODE_ITEM_GROUP ) );
+
+                for ( JsonNode interest : node.get( JSON_NODE_ITEM_INTERESTLIST ) )
+                {
+                    boolean bActive = !interest.has( JSON_NODE_INTEREST_IS_ACTIVE );
+                    int nGroupId = interest.has( "GroupID" ) ? interest.get( "GroupID" ).asInt( ) : 0;
+                    _listItems.add( buildItem( CatalogItem.TYPE_INTEREST, interest, interest.get( JSON_NODE_INTEREST_NAME ).asText( ), nGroupId, strItemGroupName,
+                            bActive ) );
+
+                    if ( bActive )
+                    {
+                        _interestsMapIdName.put( interest.get( "ID" ).asText( ), interest.get( JSON_NODE_INTEREST_NAME ).asText( ) );
+
+                        if ( strGroupName != null )
+                        {
+                            _groupedInterestsMapIdName.put( interest.get( "ID" ).asText( ), interest.get( JSON_NODE_INTEREST_NAME ).asText( ) );
+                        }
+                    }
+                }
+            }
+        }
+        catch( Exception e )
+        {
+            String strError = "Error occured while mapping Ids and Names of subscriptions.";
+            AppLogService.error( strError + e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Register a group named "[name]rang" and return its name
+     * 
+     * @param groupData
+     *            the group node
+     * @return the group name, null if the group is not a named group
+     */
+    private String getGroupName( JsonNode groupData )
+    {
+        if ( groupData == null )
+        {
+            return null;
+        }
+
+        String dolistGroupName = groupData.get( JSON_NODE_GROUP_NAME ).asText( );
+        if ( !dolistGroupName.startsWith( "[" ) || !dolistGroupName.endsWith( "]" ) )
+        {
+            return null;
+        }
+
+        String [ ] splitDlGrName = dolistGroupName.split( "\\]" );
+        if ( splitDlGrName.length == 0 )
+        {
+            return null;
+        }
+
+        String groupName = splitDlGrName [0].substring( 1, splitDlGrName [0].length( ) );
+
+        if ( splitDlGrName.length == 2 && splitDlGrName [1].length( ) > 0 && !groupName.equals( "Alertes" ) )
+        {
+            _groupViewRang.put( Integer.valueOf( splitDlGrName [1].substring( 1, splitDlGrName [1].length( ) ) ), groupName );
+        }
+
+        _groupsMapIdName.put( groupData.get( "ID" ).asText( ), groupName );
+
+        return groupName;
+    }
+
+    /**
+     * Returns the name of a group as displayed in the subscription links : "[name]rang" gives "name"
+     * 
+     * @param groupData
+     *            the group node
+     * @return the group name
+     */
+    private static String getItemGroupName( JsonNode groupData )
+    {
+        if ( groupData == null || !groupData.has( JSON_NODE_GROUP_NAME ) )
+        {
+            return StringUtils.EMPTY;
+        }
+
+        String groupName = groupData.get( JSON_NODE_GROUP_NAME ).asText( );
+
+        if ( groupName.length( ) > 2 && groupName.startsWith( "[" ) && groupName.endsWith( "]" ) )
+        {
+            String [ ] splitDlGrName = groupName.split( "\\]" );
+            groupName = splitDlGrName [0].substring( 1, splitDlGrName [0].length( ) );
+        }
+
+        return groupName;
+    }
+
+    /**
+     * Build a catalog item
+     * 
+     * @param strType
+     *            the item type
+     * @param node
+     *            the item node
+     * @param strName
+     *            the item name
+     * @param nGroupId
+     *            the group id
+     * @param strGroupName
+     *            the group name
+     * @param bEnabled
+     *            true if the item is enabled
+     * @return the item
+     */
+    private static CatalogItem buildItem( String strType, JsonNode node, String strName, int nGroupId, String strGroupName, boolean bEnabled )
+    {
+        CatalogItem item = new CatalogItem( );
+        item.setType( strType );
+        item.setId( node.get( "ID" ).asInt( ) );
+        item.setName( strName );
+        item.setGroupId( nGroupId );
+        item.setGroupName( strGroupName );
+        item.setEnabled( bEnabled );
+
+        return item;
+    }
+
+    /**
+     * Returns all the subscriptions and interests of the catalog, including the disabled and deleted ones
+     * 
+     * @return the items
+     */
+    public List<CatalogItem> getItems( )
+    {
+        return Collections.unmodifiableList( _listItems );
+    }
+
+    /**
+     * Returns the snapshot this catalog has been parsed from
+     * 
+     * @return the snapshot
+     */
+    public CatalogSnapshot getSnapshot( )
+    {
+        return _snapshot;
+    }
+
+    /**
+     * Returns the enabled subscriptions
+     * 
+     * @return the map id / name
+     */
+    public Map<String, String> getSubscriptionsMapIdName( )
+    {
+        return Collections.unmodifiableMap( _subscriptionsMapIdName );
+    }
+
+    /**
+     * Returns the active interests of all the groups
+     * 
+     * @return the map id / name
+     */
+    public Map<String, String> getInterestsMapIdName( )
+    {
+        return Collections.unmodifiableMap( _interestsMapIdName );
+    }
+
+    /**
+     * Returns the active interests of the named groups ("[name]rang")
+     * 
+     * @return the map id / name
+     */
+    public Map<String, String> getGroupedInterestsMapIdName( )
+    {
+        return Collections.unmodifiableMap( _groupedInterestsMapIdName );
+    }
+
+    /**
+     * Returns the named groups
+     * 
+     * @return the map id / name
+     */
+    public Map<String, String> getGroupsMapIdName( )
+    {
+        return Collections.unmodifiableMap( _groupsMapIdName );
+    }
+
+    /**
+     * Returns the named groups by display rank
+     * 
+     * @return the map rank / name
+     */
+    public Map<Integer, String> getGroupViewRang( )
+    {
+        return Collections.unmodifiableMap( _groupViewRang );
+    }
+}
@@ -35,10 +35,10 @@ package fr.paris.lutece.plugins.broadcastproxy.business.providers.dolist;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.TreeMap;
+import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.json.simple.JSONObject;
@@ -46,27 +46,27 @@ import org.json.simple.JSONObject;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import fr.paris.lutece.plugins.broadcastproxy.business.CatalogDelta;
+import fr.paris.lutece.plugins.broadcastproxy.business.CatalogSnapshot;
 import fr.paris.lutece.plugins.broadcastproxy.business.Feed;
 import fr.paris.lutece.plugins.broadcastproxy.business.IBroadcastProvider;
+import fr.paris.lutece.plugins.broadcastproxy.business.ICatalogListener;
 import fr.paris.lutece.plugins.broadcastproxy.business.Subscription;
 import fr.paris.lutece.plugins.broadcastproxy.business.SubscriptionLink;
 import fr.paris.lutece.plugins.broadcastproxy.business.SubscriptionLinkHome;
+import fr.paris.lutece.plugins.broadcastproxy.service.BoundedCache;
+import fr.paris.lutece.plugins.broadcastproxy.service.CatalogService;
 import fr.paris.lutece.portal.service.util.AppLogService;
 import fr.paris.lutece.portal.service.util.AppPropertiesService;
 
-public class DolistProvider implements IBroadcastProvider
+public class DolistProvider implements IBroadcastProvider, ICatalogListener
 {
     // Constants
     private static final String PROVIDER_NAME = "Dolist";
+    private static final String CACHE_CATALOGS = "catalogs";
 
     private static final String JSON_NODE_ITEMLIST = AppPropertiesService.getProperty( "dolist.jsonNode.ItemList" );
-    private static final String JSON_NODE_ITEM_INTERESTLIST = AppPropertiesService.getProperty( "dolist.jsonNode.item.InterestList" );
-    private static final String JSON_NODE_ITEM_GROUP = AppPropertiesService.getProperty( "dolist.jsonNode.item.Group" );
     private static final String JSON_NODE_SUB_ID = AppPropertiesService.getProperty( "dolist.jsonNode.sub.SubscriptionID" );
-    private static final String JSON_NODE_INTEREST_NAME = AppPropertiesService.getProperty( "dolist.jsonNode.interest.Name" );
-    private static final String JSON_NODE_INTEREST_IS_ACTIVE = AppPropertiesService.getProperty( "dolist.jsonNode.interest.isActive" );
-    private static final String JSON_NODE_GROUP_NAME = AppPropertiesService.getProperty( "dolist.jsonNode.group.Name" );
-    private static final String JSON_NODE_SUB_NAME = AppPropertiesService.getProperty( "dolist.jsonNode.sub.Name" );
     private static final String JSON_NODE_SUB_SUBSCRIBED = AppPropertiesService.getProperty( "dolist.jsonNode.sub.Subscribed" );
     private static final String JSON_NODE_SUB_UNSUBSCRIBED = AppPropertiesService.getProperty( "dolist.jsonNode.sub.Unsubscribed" );
 
@@ -76,10 +76,8 @@ public class DolistProvider implements IBroadcastProvider
     // instance variables
     private DolistAPI _dolistAPI;
 
-    private TreeMap<Integer, String> _groupViewRang = new TreeMap<>( );
-    private Map<String, String> _groupsMapIdName = new HashMap<>( );
-    private Map<String, String> _interestsMapIdName = new HashMap<>( );
-    private Map<String, String> _subscriptionsMapIdName = new HashMap<>( );
+    // catalogs parsed by account, replaced when a new snapshot is available
+    private final BoundedCache<String, DolistCatalog> _catalogs = BoundedCache.create( CACHE_CATALOGS, 64, 0 );
     
     /**
      * Constructor
@@ -105,39 +103,72 @@ public class DolistProvider implements IBroadcastProvider
 
     @Override
     public boolean updateSubscribtions( String userId, String jsonSubscriptions, String strAccountId ) throws Exception
+    {
+        Map<Integer, Boolean> subscriptionsToUpdate = getUserSubscribtionsToUpdate( jsonSubscriptions );
+        if ( subscriptionsToUpdate == null )
+        {
+            return false;
+        }
+
+        return updateSubscribtions( userId, subscriptionsToUpdate, strAccountId );
+    }
+
+    /**
+     * Update several subscriptions of an account with one subscription request and at most one interest request per operation mode
+     * 
+     * @param userId
+     *            the user id
+     * @param subscriptionsToUpdate
+     *            the subscription ids, with true to subscribe and false to unsubscribe
+     * @param strAccountId
+     *            the account id
+     * @return true if success, false if a subscription has no link or the update has failed
+     */
+    @Override
+    public boolean updateSubscribtions( String userId, Map<Integer, Boolean> subscriptionsToUpdate, String strAccountId ) throws Exception
     {
         Map<String, String> subscriptionStatus = new HashMap<>( );
-        List<Integer> interestsToAdd = new ArrayList<>( );
-        List<Integer> interestsToDelete = new ArrayList<>( );
+        Set<Integer> interestsToAdd = new LinkedHashSet<>( );
+        Set<Integer> interestsToDelete = new LinkedHashSet<>( );
         try
         {
-            Map<Integer, Boolean> subscriptionsToUpdate = getUserSubscribtionsToUpdate( jsonSubscriptions );
+            Map<Integer, SubscriptionLink> mapLinks = SubscriptionLinkHome.findBySubscriptionIds( new ArrayList<>( subscriptionsToUpdate.keySet( ) ) );
 
             for ( Map.Entry<Integer, Boolean> sub : subscriptionsToUpdate.entrySet( ) )
             {
-                Optional<SubscriptionLink> subscriptionLink = SubscriptionLinkHome.findBySubscriptionId( sub.getKey( ) );
-                if(  subscriptionLink.isPresent( ) )
+                SubscriptionLink subscriptionLink = mapLinks.get( sub.getKey( ) );
+                if ( subscriptionLink == null )
                 {
-                    if ( sub.getValue( ) )
+                    // The whole update is rejected, so that an unknown subscription is never cached as updated
+                    AppLogService.error( "Unknown subscription : " + sub.getKey( ) );
+                    return false;
+                }
+
+                if ( sub.getValue( ) )
+                {
+                    subscriptionStatus.put( String.valueOf( sub.getKey( ) ), JSON_NODE_SUB_SUBSCRIBED );
+                    if( subscriptionLink.getInterestId( ) > 0)
                     {
-                        subscriptionStatus.put( String.valueOf( sub.getKey( ) ), JSON_NODE_SUB_SUBSCRIBED );
-                        if( subscriptionLink.get( ).getInterestId( ) > 0)
-                        {
-                            interestsToAdd.add( subscriptionLink.get( ).getInterestId( ) );
-                        }
+                        interestsToAdd.add( subscriptionLink.getInterestId( ) );
                     }
-                    else
+                }
+                else
+                {
+                    subscriptionStatus.put( String.valueOf( sub.getKey( ) ), JSON_NODE_SUB_UNSUBSCRIBED );
+                    if( subscriptionLink.getInterestId( ) > 0)
                     {
-                        subscriptionStatus.put( String.valueOf( sub.getKey( ) ), JSON_NODE_SUB_UNSUBSCRIBED );
-                        if( subscriptionLink.get( ).getInterestId( ) > 0)
-                        {
-                            interestsToDelete.add( subscriptionLink.get( ).getInterestId( ) );
-                        }
+                        interestsToDelete.add( subscriptionLink.getInterestId( ) );
                     }
                 }
             }
 
-            updateSubAndInterests( userId, strAccountId, subscriptionStatus, interestsToAdd, interestsToDelete );
+            // An interest shared by a subscribed newsletter is kept
+            interestsToDelete.removeAll( interestsToAdd );
+
+            if ( !subscriptionStatus.isEmpty( ) )
+            {
+                updateSubAndInterests( userId, strAccountId, subscriptionStatus, new ArrayList<>( interestsToAdd ), new ArrayList<>( interestsToDelete ) );
+            }
 
         }
         catch( Exception e )
@@ -155,7 +186,7 @@ public class DolistProvider implements IBroadcastProvider
         Map<String, String> subscriptionStatus = new HashMap<>( );
         List<Integer> interestsToAdd = new ArrayList<>( );
         List<Integer> interestsToDelete = new ArrayList<>( );
-        initMapIdNameArrondissement( strAccountId );
+        DolistCatalog catalog = getCatalog( strAccountId );
         
         try
         {
@@ -163,11 +194,11 @@ public class DolistProvider implements IBroadcastProvider
 
             for ( Map.Entry<Integer, Boolean> sub : subscriptionsToUpdate.entrySet( ) )
             {
-                for( Map.Entry<String, String>  subscription: _subscriptionsMapIdName.entrySet( ) )
+                for( Map.Entry<String, String>  subscription: catalog.getSubscriptionsMapIdName( ).entrySet( ) )
                 {
                     subscriptionStatus.put( subscription.getKey( ), sub.getValue( ) ? JSON_NODE_SUB_SUBSCRIBED : JSON_NODE_SUB_UNSUBSCRIBED);
                 }  
-                for( Map.Entry<String, String>  interest: _interestsMapIdName.entrySet( ) )
+                for( Map.Entry<String, String>  interest: catalog.getInterestsMapIdName( ).entrySet( ) )
                 {
                     if ( sub.getValue( ) )
                     {
@@ -214,14 +245,14 @@ public class DolistProvider implements IBroadcastProvider
     public boolean update( Subscription sub, String strAccountId ) throws Exception
     {
         Map<String, String> subscriptionStatus = new HashMap<String, String>( );
-        initMapIdName( strAccountId );
+        Map<String, String> interestsMapIdName = getCatalog( strAccountId ).getGroupedInterestsMapIdName( );
         if ( sub.isActive( ) )
         {
-            subscriptionStatus.put( getSubscriptionDolistId( sub.getName( ), _interestsMapIdName ), JSON_NODE_SUB_SUBSCRIBED );
+            subscriptionStatus.put( getSubscriptionDolistId( sub.getName( ), interestsMapIdName ), JSON_NODE_SUB_SUBSCRIBED );
         }
         else
         {
-            subscriptionStatus.put( getSubscriptionDolistId( sub.getName( ), _interestsMapIdName ), JSON_NODE_SUB_UNSUBSCRIBED );
+            subscriptionStatus.put( getSubscriptionDolistId( sub.getName( ), interestsMapIdName ), JSON_NODE_SUB_UNSUBSCRIBED );
         }
 
         _dolistAPI.updateSubscribtions( sub.getUserId( ), subscriptionStatus, strAccountId );
@@ -271,136 +302,39 @@ public class DolistProvider implements IBroadcastProvider
     }
 
     /**
-     * init
+     * Get the parsed catalog of an account, from the last snapshot
      * @param strAccountId
-     * @throws Exception
+     * @return the catalog
      */
-    private void initMapIdName( String strAccountId ) throws Exception
+    private DolistCatalog getCatalog( String strAccountId )
     {
-        ObjectMapper mapper = new ObjectMapper( );
-
-        String subscriptionsInJson = _dolistAPI.getAllSubscriptions( DolistConstants.TYPE_SUBSCRIPTION, strAccountId );
-        String interestsInJson = _dolistAPI.getAllSubscriptions( DolistConstants.TYPE_INTEREST, strAccountId );
-
-        try
+        CatalogSnapshot snapshot = CatalogService.getInstance( ).getCatalog( strAccountId );
+        if ( snapshot == null )
         {
-            // Get subscriptions data (id and name)
-            JsonNode nodes = mapper.readTree( subscriptionsInJson );
-
-            JsonNode itemListNode = nodes.get( JSON_NODE_ITEMLIST );
-
-            for ( JsonNode node : itemListNode )
-            {
-                if ( node.get( "IsEnabled" ).asBoolean( ) )
-                {
-                    _subscriptionsMapIdName.put( node.get( "ID" ).asText( ), node.get( JSON_NODE_SUB_NAME ).asText( ) );
-                }
-            }
-
-            // Get interests data (id and name)
-            nodes = null;
-            itemListNode = null;
-
-            nodes = mapper.readTree( interestsInJson );
-
-            itemListNode = nodes.get( JSON_NODE_ITEMLIST );
-
-            for ( JsonNode node : itemListNode )
-            {
-                JsonNode groupData = node.get( JSON_NODE_ITEM_GROUP );
-
-                String dolistGroupName = groupData.get( JSON_NODE_GROUP_NAME ).asText( );
-                if ( dolistGroupName.substring( 0, 1 ).equals( "[" )
-                        && dolistGroupName.substring( dolistGroupName.length( ) - 1, dolistGroupName.length( ) ).equals( "]" ) )
-                {
-                    String [ ] splitDlGrName = dolistGroupName.split( "\\]" );
-
-                    if ( splitDlGrName.length > 0 )
-                    {
-                        String groupName = splitDlGrName [0].substring( 1, splitDlGrName [0].length( ) );
-
-                        if ( splitDlGrName.length == 2 && splitDlGrName [1].length( ) > 0 && !groupName.equals( "Alertes" ) )
-                        {
-                            _groupViewRang.put( Integer.valueOf( splitDlGrName [1].substring( 1, splitDlGrName [1].length( ) ) ), groupName );
-                        }
-
-                        _groupsMapIdName.put( groupData.get( "ID" ).asText( ), groupName );
-
-                        JsonNode intersts = node.get( JSON_NODE_ITEM_INTERESTLIST );
-                        for ( JsonNode interest : intersts )
-                        {
-                            if ( !interest.has( JSON_NODE_INTEREST_IS_ACTIVE ) )
-                            {
-                                _interestsMapIdName.put( interest.get( "ID" ).asText( ), interest.get( JSON_NODE_INTEREST_NAME ).asText( ) );
-                            }
-                        }
-                    }
-                }
-            }
+            return new DolistCatalog( null );
         }
-        catch( Exception e )
+
+        DolistCatalog catalog = _catalogs.get( strAccountId );
+        if ( catalog == null || catalog.getSnapshot( ) != snapshot )
         {
-            String strError = "Error occured while mapping Ids and Names of subscriptions.";
-            AppLogService.error( strError + e.getMessage( ), e );
+            catalog = new DolistCatalog( snapshot );
+            _catalogs.put( strAccountId, catalog );
         }
+
+        return catalog;
     }
 
     /**
-     * init
-     * @param strAccountId
-     * @throws Exception
+     * Drop the parsed catalog of an account when it has changed
+     * 
+     * @param delta
+     *            the changes of the catalog
      */
-    private void initMapIdNameArrondissement( String strAccountId ) throws Exception
+    @Override
+    public void processCatalogChange( CatalogDelta delta )
     {
-        ObjectMapper mapper = new ObjectMapper( );
-        _interestsMapIdName = new HashMap<>( );
-        _subscriptionsMapIdName = new HashMap<>( );
-        
-        String subscriptionsInJson = _dolistAPI.getAllSubscriptions( DolistConstants.TYPE_SUBSCRIPTION, strAccountId );
-        String interestsInJson = _dolistAPI.getAllSubscriptions( DolistConstants.TYPE_INTEREST, strAccountId );
-
-        try
-        {
-            // Get subscriptions data (id and name)
-            JsonNode nodes = mapper.readTree( subscriptionsInJson );
-
-            JsonNode itemListNode = nodes.get( JSON_NODE_ITEMLIST );
-
-            for ( JsonNode node : itemListNode )
-            {
-                if ( node.get( "IsEnabled" ).asBoolean( ) )
-                {
-                    _subscriptionsMapIdName.put( node.get( "ID" ).asText( ), node.get( JSON_NODE_SUB_NAME ).asText( ) );
-                }
-            }
-
-            // Get interests data (id and name)
-            nodes = mapper.readTree( interestsInJson );
-
-            itemListNode = nodes.get( JSON_NODE_ITEMLIST );
-
-            for ( JsonNode node : itemListNode )
-            {
-                if ( node != null )
-                {
-                    JsonNode intersts = node.get( JSON_NODE_ITEM_INTERESTLIST );
-                    for ( JsonNode interest : intersts )
-                    {
-                        if ( !interest.has( JSON_NODE_INTEREST_IS_ACTIVE ) )
-                        {
-                            _interestsMapIdName.put( interest.get( "ID" ).asText( ), interest.get( JSON_NODE_INTEREST_NAME ).asText( ) );
-                        }
-                    }
-                }
-            }
-        }
-        catch( Exception e )
-        {
-            String strError = "Error occured while mapping Ids and Names of subscriptions.";
-            AppLogService.error( strError + e.getMessage( ), e );
-        }
+        _catalogs.remove( delta.getAccountId( ) );
     }
-    
 
     /**
      * get subscription dolist ID
@@ -454,6 +388,7 @@ public class DolistProvider implements IBroadcastProvider
         catch (Exception e)
         {
             AppLogService.error( "Error occured while getting the list of user subscriptions ids :", e.getMessage( ) );
+            return null;
         }
         
         return jsonLsit;
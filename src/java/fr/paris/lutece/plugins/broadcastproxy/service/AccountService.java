@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * 
+ * Registry of the configured provider accounts : the default account and the arrondissement ones
+ *
+ */
+public final class AccountService
+{
+    public static final String ACCOUNT_DEFAULT = "default";
+
+    private static final String PROPERTY_ACCOUNT_ID = "dolist.CONSTANTE_ACCOUNT_ID";
+    private static final String PROPERTY_ACCOUNT_ADDROND_PREFIX = "dolist.CONSTANTE_ACCOUNT_ID_";
+
+    private static final AccountService _singleton = new AccountService( );
+
+    private final String _strDefaultAccountId;
+    private final Map<String, String> _mapArrondissementAccounts = new LinkedHashMap<>( );
+
+    /**
+     * Private constructor
+     */
+    private AccountService( )
+    {
+        _strDefaultAccountId = AppPropertiesService.getProperty( PROPERTY_ACCOUNT_ID );
+
+        for ( String strAccountKey : AppPropertiesService.getKeys( PROPERTY_ACCOUNT_ADDROND_PREFIX ) )
+        {
+            String strAccountId = AppPropertiesService.getProperty( strAccountKey );
+            if ( StringUtils.isNotEmpty( strAccountId ) )
+            {
+                _mapArrondissementAccounts.put( strAccountKey.replace( PROPERTY_ACCOUNT_ADDROND_PREFIX, StringUtils.EMPTY ), strAccountId );
+            }
+        }
+    }
+
+    /**
+     * Get instance of AccountService
+     * 
+     * @return instance of AccountService
+     */
+    public static AccountService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * Returns the default account id
+     * 
+     * @return the default account id
+     */
+    public String getDefaultAccountId( )
+    {
+        return _strDefaultAccountId;
+    }
+
+    /**
+     * Returns the configured arrondissement accounts
+     * 
+     * @return the account ids by arrondissement name, in the order of the configuration
+     */
+    public Map<String, String> getArrondissementAccounts( )
+    {
+        return Collections.unmodifiableMap( _mapArrondissementAccounts );
+    }
+
+    /**
+     * Returns the names of the configured arrondissements
+     * 
+     * @return the names, in the order of the configuration
+     */
+    public List<String> getArrondissementNames( )
+    {
+        return new ArrayList<>( _mapArrondissementAccounts.keySet( ) );
+    }
+
+    /**
+     * Get the id of an account from its name
+     * 
+     * @param strAccountName
+     *            the arrondissement name, empty or "default" for the default account
+     * @return the account id, null if the account is not configured
+     */
+    public String getAccountId( String strAccountName )
+    {
+        if ( StringUtils.isEmpty( strAccountName ) || ACCOUNT_DEFAULT.equals( strAccountName ) )
+        {
+            return _strDefaultAccountId;
+        }
+
+        return _mapArrondissementAccounts.get( strAccountName );
+    }
+
+    /**
+     * Returns all the configured account ids
+     * 
+     * @return the default account id followed by the arrondissement ones
+     */
+    public List<String> getAccountIds( )
+    {
+        List<String> listAccountIds = new ArrayList<>( );
+        if ( StringUtils.isNotEmpty( _strDefaultAccountId ) )
+        {
+            listAccountIds.add( _strDefaultAccountId );
+        }
+
+        for ( String strAccountId : _mapArrondissementAccounts.values( ) )
+        {
+            if ( !listAccountIds.contains( strAccountId ) )
+            {
+                listAccountIds.add( strAccountId );
+            }
+        }
+
+        return listAccountIds;
+    }
+}
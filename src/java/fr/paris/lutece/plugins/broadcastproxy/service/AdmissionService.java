@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * 
+ * Admission control of the front office requests which have to call the provider : at most maxConcurrent requests are in flight on this node, the
+ * others wait for a permit at most maxWait milliseconds, then are rejected so that they can be answered at once with the cached subscriptions or
+ * an error. The time spent waiting for a permit is measured.
+ *
+ */
+public final class AdmissionService
+{
+    private static final String PROPERTY_ENABLED = "broadcastproxy.admission.enabled";
+    private static final String PROPERTY_MAX_CONCURRENT = "broadcastproxy.admission.maxConcurrent";
+    private static final int DEFAULT_MAX_CONCURRENT = 20;
+    private static final String PROPERTY_MAX_WAIT = "broadcastproxy.admission.maxWait";
+    private static final long DEFAULT_MAX_WAIT = 50;
+
+    // Upper bounds of the queue time buckets, in milliseconds : the last bucket has no upper bound
+    private static final long [ ] QUEUE_TIME_BOUNDS = {
+            1, 5, 10, 25, 50, 100
+    };
+
+    private static final String KEY_ENABLED = "enabled";
+    private static final String KEY_MAX_CONCURRENT = "maxConcurrent";
+    private static final String KEY_IN_FLIGHT = "inFlight";
+    private static final String KEY_QUEUED = "queued";
+    private static final String KEY_ADMITTED = "admitted";
+    private static final String KEY_REJECTED = "rejected";
+    private static final String KEY_DEGRADED = "degraded";
+    private static final String KEY_AVERAGE_QUEUE_TIME = "averageQueueTime";
+    private static final String KEY_MAX_QUEUE_TIME = "maxQueueTime";
+    private static final String KEY_QUEUE_TIME_BOUNDS = "queueTimeBounds";
+    private static final String KEY_QUEUE_TIME_HISTOGRAM = "queueTimeHistogram";
+
+    private static final AdmissionService _singleton = new AdmissionService( );
+
+    private final boolean _bEnabled;
+    private final int _nMaxConcurrent;
+    private final long _lMaxWait;
+    private final Semaphore _permits;
+
+    private final LongAdder _admitted = new LongAdder( );
+    private final LongAdder _rejected = new LongAdder( );
+    private final LongAdder _degraded = new LongAdder( );
+    private final LongAdder _queueTime = new LongAdder( );
+    private final LongAccumulator _maxQueueTime = new LongAccumulator( Math::max, 0 );
+    private final LongAdder [ ] _queueTimeBuckets = new LongAdder [ QUEUE_TIME_BOUNDS.length + 1];
+
+    /**
+     * Private constructor
+     */
+    private AdmissionService( )
+    {
+        _bEnabled = AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, true );
+        _nMaxConcurrent = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_MAX_CONCURRENT, DEFAULT_MAX_CONCURRENT ) );
+        _lMaxWait = Math.max( 0, AppPropertiesService.getPropertyLong( PROPERTY_MAX_WAIT, DEFAULT_MAX_WAIT ) );
+        // The waiting requests are admitted in order of arrival
+        _permits = new Semaphore( _nMaxConcurrent, true );
+
+        for ( int i = 0; i < _queueTimeBuckets.length; i++ )
+        {
+            _queueTimeBuckets [i] = new LongAdder( );
+        }
+    }
+
+    /**
+     * Get instance of AdmissionService
+     * 
+     * @return instance of AdmissionService
+     */
+    public static AdmissionService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * Ask for a permit to call the provider, waiting at most maxWait milliseconds. An admitted request must call {@link #release( )} once the
+     * provider has answered.
+     * 
+     * @return true if the request is admitted
+     */
+    public boolean tryAcquire( )
+    {
+        if ( !_bEnabled )
+        {
+            return true;
+        }
+
+        long lStartTime = System.nanoTime( );
+        boolean bAdmitted;
+        try
+        {
+            bAdmitted = _permits.tryAcquire( _lMaxWait, TimeUnit.MILLISECONDS );
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+            bAdmitted = false;
+        }
+
+        recordQueueTime( TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - lStartTime ) );
+        if ( bAdmitted )
+        {
+            _admitted.increment( );
+        }
+        else
+        {
+            _rejected.increment( );
+        }
+
+        return bAdmitted;
+    }
+
+    /**
+     * Give back the permit of an admitted request
+     */
+    public void release( )
+    {
+        if ( _bEnabled )
+        {
+            _permits.release( );
+        }
+    }
+
+    /**
+     * Record a rejected request answered with the cached subscriptions
+     */
+    public void recordDegraded( )
+    {
+        _degraded.increment( );
+    }
+
+    /**
+     * Forget the counters
+     */
+    public void reset( )
+    {
+        _admitted.reset( );
+        _rejected.reset( );
+        _degraded.reset( );
+        _queueTime.reset( );
+        _maxQueueTime.reset( );
+        for ( LongAdder bucket : _queueTimeBuckets )
+        {
+            bucket.reset( );
+        }
+    }
+
+    /**
+     * Returns the current values of the admission control
+     * 
+     * @return the values, in maps and lists of numbers
+     */
+    public Map<String, Object> getValues( )
+    {
+        long lQueued = _admitted.sum( ) + _rejected.sum( );
+
+        Map<String, Object> mapValues = new LinkedHashMap<>( );
+        mapValues.put( KEY_ENABLED, _bEnabled );
+        mapValues.put( KEY_MAX_CONCURRENT, _nMaxConcurrent );
+        mapValues.put( KEY_IN_FLIGHT, _bEnabled ? _nMaxConcurrent - _permits.availablePermits( ) : 0 );
+        mapValues.put( KEY_QUEUED, _permits.getQueueLength( ) );
+        mapValues.put( KEY_ADMITTED, _admitted.sum( ) );
+        mapValues.put( KEY_REJECTED, _rejected.sum( ) );
+        mapValues.put( KEY_DEGRADED, _degraded.sum( ) );
+        mapValues.put( KEY_AVERAGE_QUEUE_TIME, lQueued == 0 ? 0 : _queueTime.sum( ) / lQueued );
+        mapValues.put( KEY_MAX_QUEUE_TIME, _maxQueueTime.get( ) );
+
+        List<Long> listBounds = new ArrayList<>( );
+        for ( long lBound : QUEUE_TIME_BOUNDS )
+        {
+            listBounds.add( lBound );
+        }
+        mapValues.put( KEY_QUEUE_TIME_BOUNDS, listBounds );
+
+        List<Long> listCounts = new ArrayList<>( );
+        for ( LongAdder bucket : _queueTimeBuckets )
+        {
+            listCounts.add( bucket.sum( ) );
+        }
+        mapValues.put( KEY_QUEUE_TIME_HISTOGRAM, listCounts );
+
+        return mapValues;
+    }
+
+    /**
+     * Record the time a request has waited for a permit
+     * 
+     * @param lMillis
+     *            the time in milliseconds
+     */
+    private void recordQueueTime( long lMillis )
+    {
+        _queueTime.add( lMillis );
+        _maxQueueTime.accumulate( lMillis );
+
+        int nBucket = 0;
+        while ( nBucket < QUEUE_TIME_BOUNDS.length && lMillis > QUEUE_TIME_BOUNDS [nBucket] )
+        {
+            nBucket++;
+        }
+        _queueTimeBuckets [nBucket].increment( );
+    }
+}
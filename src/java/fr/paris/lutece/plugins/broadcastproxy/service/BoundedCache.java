@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * 
+ * Cache bounded by a number of entries, with a time to live. When the cache is full, the least recently used entry is evicted only if the new
+ * entry is used more frequently (TinyLFU admission), so that the keys requested once don't evict the keys which are requested again. The limits
+ * of a cache are set by the properties broadcastproxy.cache.&lt;name&gt;.maxEntries and broadcastproxy.cache.&lt;name&gt;.ttl (in seconds, 0 for
+ * no expiration).
+ *
+ * @param <K>
+ *            the type of the keys
+ * @param <V>
+ *            the type of the values
+ */
+public final class BoundedCache<K, V>
+{
+    private static final String PROPERTY_PREFIX = "broadcastproxy.cache.";
+    private static final String PROPERTY_SUFFIX_MAX_ENTRIES = ".maxEntries";
+    private static final String PROPERTY_SUFFIX_TTL = ".ttl";
+
+    private final String _strName;
+    private final int _nMaxEntries;
+    private final long _lTtl;
+    private final LinkedHashMap<K, Entry<V>> _map = new LinkedHashMap<>( 16, 0.75f, true );
+    private final FrequencySketch _sketch;
+    private final LongAdder _hits = new LongAdder( );
+    private final LongAdder _misses = new LongAdder( );
+    private final LongAdder _evictions = new LongAdder( );
+    private final LongAdder _rejections = new LongAdder( );
+
+    /**
+     * Constructor
+     * 
+     * @param strName
+     *            the name of the cache
+     * @param nMaxEntries
+     *            the maximum number of entries
+     * @param lTtl
+     *            the time to live of the entries in seconds, 0 for no expiration
+     */
+    public BoundedCache( String strName, int nMaxEntries, long lTtl )
+    {
+        _strName = strName;
+        _nMaxEntries = Math.max( 1, nMaxEntries );
+        _lTtl = TimeUnit.SECONDS.toMillis( Math.max( 0, lTtl ) );
+        _sketch = new FrequencySketch( _nMaxEntries );
+    }
+
+    /**
+     * Create a cache with the limits set in the properties, and register it in the cache metrics
+     * 
+     * @param strName
+     *            the name of the cache
+     * @param nDefaultMaxEntries
+     *            the maximum number of entries if the property is not set
+     * @param lDefaultTtl
+     *            the time to live in seconds if the property is not set
+     * @param <K>
+     *            the type of the keys
+     * @param <V>
+     *            the type of the values
+     * @return the cache
+     */
+    public static <K, V> BoundedCache<K, V> create( String strName, int nDefaultMaxEntries, long lDefaultTtl )
+    {
+        BoundedCache<K, V> cache = new BoundedCache<>( strName,
+                AppPropertiesService.getPropertyInt( PROPERTY_PREFIX + strName + PROPERTY_SUFFIX_MAX_ENTRIES, nDefaultMaxEntries ),
+                AppPropertiesService.getPropertyLong( PROPERTY_PREFIX + strName + PROPERTY_SUFFIX_TTL, lDefaultTtl ) );
+        CacheMetricsService.getInstance( ).register( cache );
+
+        return cache;
+    }
+
+    /**
+     * Returns the value of a key
+     * 
+     * @param key
+     *            the key
+     * @return the value, null if it is not cached or has expired
+     */
+    public synchronized V get( K key )
+    {
+        _sketch.increment( hash( key ) );
+
+        Entry<V> entry = _map.get( key );
+        if ( entry == null || isExpired( entry ) )
+        {
+            if ( entry != null )
+            {
+                _map.remove( key );
+            }
+            _misses.increment( );
+            return null;
+        }
+
+        _hits.increment( );
+        return entry._value;
+    }
+
+    /**
+     * Cache the value of a key : an existing key is always replaced, a new key is rejected if the cache is full of keys used more frequently
+     * 
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @return true if the value has been cached
+     */
+    public synchronized boolean put( K key, V value )
+    {
+        if ( !_map.containsKey( key ) && _map.size( ) >= _nMaxEntries )
+        {
+            Iterator<Map.Entry<K, Entry<V>>> iterator = _map.entrySet( ).iterator( );
+            Map.Entry<K, Entry<V>> eldest = iterator.next( );
+
+            if ( !isExpired( eldest.getValue( ) ) && _sketch.frequency( hash( key ) ) <= _sketch.frequency( hash( eldest.getKey( ) ) ) )
+            {
+                _rejections.increment( );
+                return false;
+            }
+
+            iterator.remove( );
+            _evictions.increment( );
+        }
+
+        _map.put( key, new Entry<>( value, System.currentTimeMillis( ) ) );
+        return true;
+    }
+
+    /**
+     * Remove a key
+     * 
+     * @param key
+     *            the key
+     */
+    public synchronized void remove( K key )
+    {
+        _map.remove( key );
+    }
+
+    /**
+     * Remove all the keys
+     */
+    public synchronized void clear( )
+    {
+        _map.clear( );
+        _sketch.clear( );
+    }
+
+    /**
+     * Returns the name of the cache
+     * 
+     * @return the name
+     */
+    public String getName( )
+    {
+        return _strName;
+    }
+
+    /**
+     * Returns the number of entries, including the expired entries not yet removed
+     * 
+     * @return the number of entries
+     */
+    public synchronized int size( )
+    {
+        return _map.size( );
+    }
+
+    /**
+     * Returns the maximum number of entries
+     * 
+     * @return the maximum number of entries
+     */
+    public int getMaxEntries( )
+    {
+        return _nMaxEntries;
+    }
+
+    /**
+     * Returns the number of values found
+     * 
+     * @return the number of hits
+     */
+    public long getHits( )
+    {
+        return _hits.sum( );
+    }
+
+    /**
+     * Returns the number of values not found
+     * 
+     * @return the number of misses
+     */
+    public long getMisses( )
+    {
+        return _misses.sum( );
+    }
+
+    /**
+     * Returns the number of entries evicted to make room for more frequently used entries
+     * 
+     * @return the number of evictions
+     */
+    public long getEvictions( )
+    {
+        return _evictions.sum( );
+    }
+
+    /**
+     * Returns the number of new entries rejected because the cache is full of more frequently used entries
+     * 
+     * @return the number of rejections
+     */
+    public long getRejections( )
+    {
+        return _rejections.sum( );
+    }
+
+    private boolean isExpired( Entry<V> entry )
+    {
+        return _lTtl > 0 && System.currentTimeMillis( ) - entry._lCreationTime > _lTtl;
+    }
+
+    private static long hash( Object key )
+    {
+        return key.hashCode( ) * 0x9e3779b97f4a7c15L;
+    }
+
+    /**
+     * A cached value and its creation date
+     * 
+     * @param <V>
+     *            the type of the value
+     */
+    private static final class Entry<V>
+    {
+        private final V _value;
+        private final long _lCreationTime;
+
+        Entry( V value, long lCreationTime )
+        {
+            _value = value;
+            _lCreationTime = lCreationTime;
+        }
+    }
+}
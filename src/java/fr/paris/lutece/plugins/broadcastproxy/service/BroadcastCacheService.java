@@ -33,22 +33,40 @@
  */
 package fr.paris.lutece.plugins.broadcastproxy.service;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
-import org.apache.commons.lang3.StringUtils;
-
+import fr.paris.lutece.plugins.broadcastproxy.business.AccountSubscriptionState;
 import fr.paris.lutece.portal.service.cache.AbstractCacheableService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
 
 
 /**
  * 
- * BroadcastCacheService
+ * BroadcastCacheService : the subscriptions of the users are kept in a bounded UserSubscriptionStore, or in the cache of the service if the store
+ * is disabled
  *
  */
 public class BroadcastCacheService extends AbstractCacheableService
 {
 
     private static final String SERVICE_NAME = "broadcastCacheService";
-    private static BroadcastCacheService _singleton;
+    private static final String PROPERTY_STORE_ENABLED = "broadcastproxy.cache.userSubscriptions.store.enabled";
+    private static final String PROPERTY_STORE_MAX_ENTRIES = "broadcastproxy.cache.userSubscriptions.store.maxEntries";
+    private static final String PROPERTY_STORE_MAX_IDS = "broadcastproxy.cache.userSubscriptions.store.maxIds";
+    private static final String PROPERTY_STORE_OFF_HEAP = "broadcastproxy.cache.userSubscriptions.store.offHeap";
+    private static final String PROPERTY_TTL = "broadcastproxy.cache.userSubscriptions.ttl";
+    private static final long DEFAULT_TTL = 3600;
+    private static final BroadcastCacheService _singleton = new BroadcastCacheService( );
+
+    // Loads in progress, by cache key
+    private final Map<String, CompletableFuture<AccountSubscriptionState>> _mapPendingLoads = new ConcurrentHashMap<>( );
+
+    private final UserSubscriptionStore _store;
     
     /**
      * Init cache
@@ -56,6 +74,17 @@ public class BroadcastCacheService extends AbstractCacheableService
     private BroadcastCacheService ( )
     {
         initCache( );
+
+        if ( AppPropertiesService.getPropertyBoolean( PROPERTY_STORE_ENABLED, true ) )
+        {
+            _store = new UserSubscriptionStore( AppPropertiesService.getPropertyInt( PROPERTY_STORE_MAX_ENTRIES, 200000 ),
+                    AppPropertiesService.getPropertyInt( PROPERTY_STORE_MAX_IDS, 32 ), AppPropertiesService.getPropertyBoolean( PROPERTY_STORE_OFF_HEAP, false ) );
+            AppLogService.info( "Broadcastproxy user subscriptions store : " + _store.getCapacity( ) + " entries, " + _store.getMemorySize( ) + " bytes" );
+        }
+        else
+        {
+            _store = null;
+        }
     }
     
     /**
@@ -64,11 +93,6 @@ public class BroadcastCacheService extends AbstractCacheableService
      */
     public static BroadcastCacheService getInstance ( )
     {
-        if ( _singleton == null )
-        {
-            _singleton = new BroadcastCacheService( );
-        }
-        
         return _singleton;
     }
     
@@ -78,29 +102,179 @@ public class BroadcastCacheService extends AbstractCacheableService
     {
         return SERVICE_NAME;
     }
-    
-    public void addUserSubscription (  String strUserId, String strListSubscriptionIds  )
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetCache( )
     {
-        if ( StringUtils.isNotEmpty( strListSubscriptionIds ) && getUserSubscriptionIds(  getCacheKey( strUserId ) ) == null )
+        super.resetCache( );
+
+        if ( _store != null )
         {
-            putInCache( getCacheKey(strUserId  ), strListSubscriptionIds );
+            _store.clear( );
         }
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCacheSize( )
+    {
+        return super.getCacheSize( ) + ( _store != null ? _store.size( ) : 0 );
+    }
     
-    public void removeUserSubscription (  String strUserId  )
+    /**
+     * Returns the bounded store of the subscriptions
+     * @return the store, null if it is disabled
+     */
+    UserSubscriptionStore getStore( )
+    {
+        return _store;
+    }
+
+    /**
+     * Put the subscriptions of a user to an account in the cache
+     * @param strUserId the user id
+     * @param strAccountId the account id
+     * @param state the subscriptions
+     */
+    public void putAccountSubscriptionState( String strUserId, String strAccountId, AccountSubscriptionState state )
     {
-         removeKey( getCacheKey(strUserId  ) );
+        if ( state == null )
+        {
+            return;
+        }
+
+        if ( _store == null )
+        {
+            putInCache( getCacheKey( strUserId, strAccountId ), state );
+        }
+        else if ( isCacheEnable( ) )
+        {
+            long lTtl = TimeUnit.SECONDS.toMillis( AppPropertiesService.getPropertyLong( PROPERTY_TTL, DEFAULT_TTL ) );
+            boolean bOversized = state.getSubscriptionIds( ).length > _store.getMaxIds( );
+            if ( !_store.put( UserSubscriptionService.normalizeUserId( strUserId ), strAccountId, state, System.currentTimeMillis( ) - lTtl ) && !bOversized )
+            {
+                AppLogService.debug( "Subscriptions of account " + strAccountId + " not admitted in the store" );
+            }
+
+            // A state too large for a slot of the store is kept by the plugin cache, and removed from it when it fits again
+            if ( bOversized )
+            {
+                putInCache( getCacheKey( strUserId, strAccountId ), state );
+            }
+            else
+            {
+                removeKey( getCacheKey( strUserId, strAccountId ) );
+            }
+        }
     }
 
-    public String getUserSubscriptionIds ( String strUserId )
+    /**
+     * Get the cached subscriptions of a user to an account
+     * @param strUserId the user id
+     * @param strAccountId the account id
+     * @return the subscriptions, null if they are not in the cache
+     */
+    public AccountSubscriptionState getAccountSubscriptionState( String strUserId, String strAccountId )
     {
-        return  ( String ) getFromCache( getCacheKey( strUserId ) );
+        if ( _store == null )
+        {
+            return ( AccountSubscriptionState ) getFromCache( getCacheKey( strUserId, strAccountId ) );
+        }
+
+        if ( !isCacheEnable( ) )
+        {
+            return null;
+        }
+
+        AccountSubscriptionState state = _store.get( UserSubscriptionService.normalizeUserId( strUserId ), strAccountId );
+
+        return ( state != null ) ? state : (AccountSubscriptionState) getFromCache( getCacheKey( strUserId, strAccountId ) );
+    }
+
+    /**
+     * Load the subscriptions of a user to an account, only once for concurrent callers : the first caller starts the load, the others get the same
+     * future until it is completed
+     * @param strUserId the user id
+     * @param strAccountId the account id
+     * @param loader starts the load
+     * @return the future of the load
+     */
+    public CompletableFuture<AccountSubscriptionState> loadAccountSubscriptionState( String strUserId, String strAccountId,
+            Supplier<CompletableFuture<AccountSubscriptionState>> loader )
+    {
+        String strKey = getCacheKey( strUserId, strAccountId );
+        CompletableFuture<AccountSubscriptionState> future = new CompletableFuture<>( );
+
+        CompletableFuture<AccountSubscriptionState> pendingLoad = _mapPendingLoads.putIfAbsent( strKey, future );
+        if ( pendingLoad != null )
+        {
+            return pendingLoad;
+        }
+
+        try
+        {
+            loader.get( ).whenComplete( ( state, e ) -> {
+                _mapPendingLoads.remove( strKey, future );
+                if ( e != null )
+                {
+                    future.completeExceptionally( e );
+                }
+                else
+                {
+                    future.complete( state );
+                }
+            } );
+        }
+        catch( RuntimeException e )
+        {
+            _mapPendingLoads.remove( strKey, future );
+            future.completeExceptionally( e );
+        }
+
+        return future;
+    }
+
+    /**
+     * Remove the cached subscriptions of a user to an account
+     * @param strUserId the user id
+     * @param strAccountId the account id
+     */
+    public void removeAccountSubscriptionState( String strUserId, String strAccountId )
+    {
+        CacheMetricsService.getInstance( ).getMetrics( strAccountId ).recordInvalidation( );
+
+        if ( _store == null )
+        {
+            removeKey( getCacheKey( strUserId, strAccountId ) );
+        }
+        else
+        {
+            _store.remove( UserSubscriptionService.normalizeUserId( strUserId ), strAccountId );
+            removeKey( getCacheKey( strUserId, strAccountId ) );
+        }
+    }
+
+    /**
+     * Remove the cached subscriptions of a user to all the accounts
+     * @param strUserId the user id
+     */
+    public void removeUserSubscription (  String strUserId  )
+    {
+        for ( String strAccountId : AccountService.getInstance( ).getAccountIds( ) )
+        {
+            removeAccountSubscriptionState( strUserId, strAccountId );
+        }
     }
 
-    private String getCacheKey( String strUserId )
+    private String getCacheKey( String strUserId, String strAccountId )
     {
         StringBuilder sbKey = new StringBuilder( );
-        sbKey.append( "[subscription_user:" ).append( strUserId ).append( "]" );
+        sbKey.append( "[subscription_user:" ).append( UserSubscriptionService.normalizeUserId( strUserId ) ).append( ":" ).append( strAccountId ).append( "]" );
         return sbKey.toString( );
     }
     
@@ -33,125 +33,146 @@
  */
 package fr.paris.lutece.plugins.broadcastproxy.service;
 
-import java.util.HashMap;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-import org.apache.commons.lang3.StringUtils;
-
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import fr.paris.lutece.plugins.broadcastproxy.business.SubscriptionLink;
-import fr.paris.lutece.plugins.broadcastproxy.business.SubscriptionLinkHome;
-import fr.paris.lutece.plugins.broadcastproxy.business.providers.dolist.DolistConstants;
+import fr.paris.lutece.plugins.broadcastproxy.business.CatalogSnapshot;
+import fr.paris.lutece.plugins.broadcastproxy.business.providers.dolist.DolistCatalog;
 import fr.paris.lutece.portal.service.daemon.Daemon;
 import fr.paris.lutece.portal.service.util.AppLogService;
 import fr.paris.lutece.portal.service.util.AppPropertiesService;
 
 /**
  * 
- * Load the list of subscriptions
+ * Refresh in parallel the catalogs of the accounts whose lease is held by this node, and reload the others from the database : the subscription links are synchronized by the catalog listeners when the
+ * catalog of the default account has changed, and once at the first run to catch up with the changes made while the application was stopped
  *
  */
 public class BroadcastDaemon extends Daemon
 {
 
     // Constants
-    private static final String JSON_NODE_ITEMLIST              = AppPropertiesService.getProperty( "dolist.jsonNode.ItemList" );
-    private static final String JSON_NODE_GROUP                 = AppPropertiesService.getProperty( "dolist.jsonNode.item.Group" );
-    private static final String JSON_NODE_INTEREST_LIST         = AppPropertiesService.getProperty( "dolist.jsonNode.item.InterestList" );
-    private static final String JSON_NODE_GROUP_NAME            = AppPropertiesService.getProperty( "dolist.jsonNode.group.Name" );
-    private static final String JSON_NODE_DELETE_DATE           = AppPropertiesService.getProperty( "dolist.jsonNode.interest.isActive" );
-    private static final String PROPERTY_ACCOUNT_ID             = AppPropertiesService.getProperty( "dolist.CONSTANTE_ACCOUNT_ID" );
+    private static final String PROPERTY_CATALOG_TIMEOUT        = "broadcastproxy.daemon.catalogTimeout";
+    private static final long DEFAULT_CATALOG_TIMEOUT           = 120;
+
+    private boolean _bSynchronized;
 
     
     @Override
     public void run( )
     {
-        loadSubscription( PROPERTY_ACCOUNT_ID );
+        long lTimeout = TimeUnit.SECONDS.toMillis( AppPropertiesService.getPropertyLong( PROPERTY_CATALOG_TIMEOUT, DEFAULT_CATALOG_TIMEOUT ) );
+        long lDeadline = System.currentTimeMillis( ) + lTimeout;
+
+        // The accounts whose lease is held by this node are requested at once, each one has its own deadline and its own error handling.
+        // The other accounts are reloaded from the snapshots stored by their owner.
+        Map<String, CompletableFuture<CatalogSnapshot>> mapFutures = new LinkedHashMap<>( );
+        StringBuilder sbLogs = new StringBuilder( "Node " ).append( LeaseService.getInstance( ).getNodeId( ) ).append( '\n' );
+        for ( String strAccountId : getAccountIds( ) )
+        {
+            if ( LeaseService.getInstance( ).tryAcquire( LeaseService.getCatalogLeaseName( strAccountId ) ) )
+            {
+                mapFutures.put( strAccountId, CatalogService.getInstance( ).refreshAsync( strAccountId ) );
+            }
+            else
+            {
+                CatalogService.getInstance( ).reload( strAccountId );
+                sbLogs.append( "Account " ).append( strAccountId ).append( " : reloaded from the database\n" );
+            }
+        }
+
+        for ( Map.Entry<String, CompletableFuture<CatalogSnapshot>> future : mapFutures.entrySet( ) )
+        {
+            String strAccountId = future.getKey( );
+            CatalogSnapshot catalog = waitCatalog( strAccountId, future.getValue( ), lDeadline );
+
+            if ( strAccountId.equals( AccountService.getInstance( ).getDefaultAccountId( ) ) )
+            {
+                synchronizeSubscriptionLinks( catalog );
+            }
+
+            Timestamp lastSuccess = CatalogService.getInstance( ).getLastSuccess( strAccountId );
+            sbLogs.append( "Account " ).append( strAccountId ).append( " : last successful refresh " ).append( lastSuccess ).append( '\n' );
+        }
+
+        setLastRunLogs( sbLogs.toString( ) );
     }
 
     /**
-     * Retrieve subscriptions
+     * Get the accounts in an order depending on the node, so that the nodes compete for different leases first
+     * 
+     * @return the account ids
      */
-    private void loadSubscription( String strAccountId )
+    private List<String> getAccountIds( )
     {
-        BroadcastService broadcastService = BroadcastService.getInstance( );
-        String jsonAllSubscriptionsInterest = broadcastService.getAllSubscriptionByGroup( DolistConstants.TYPE_INTEREST, strAccountId );
-        String subscriptionsInJson = broadcastService.getAllSubscriptionByGroup( DolistConstants.TYPE_SUBSCRIPTION, strAccountId );
-
-        ObjectMapper mapper = new ObjectMapper( );
-        String groupName = StringUtils.EMPTY;
-        Map<String, String> subscriptionsMapIdName = new HashMap<>( );
-        
-        try
+        List<String> listAccountIds = AccountService.getInstance( ).getAccountIds( );
+        if ( !listAccountIds.isEmpty( ) )
         {
-            // Get subscriptions data (id and name)
-            JsonNode nodesSub = mapper.readTree( subscriptionsInJson );
+            Collections.rotate( listAccountIds, Math.abs( LeaseService.getInstance( ).getNodeId( ).hashCode( ) % listAccountIds.size( ) ) );
+        }
 
-            JsonNode itemListNodeSub = nodesSub.get( JSON_NODE_ITEMLIST );
+        return listAccountIds;
+    }
 
-            for ( JsonNode node : itemListNodeSub )
-            {
-                if ( node.get( "IsEnabled" ).asBoolean( ) )
-                {
-                    subscriptionsMapIdName.put( node.get( JSON_NODE_GROUP_NAME ).asText( ), node.get( "ID" ).asText( ) );
-                }
-            }
-            
-            //Interests
-            JsonNode nodes = mapper.readTree( jsonAllSubscriptionsInterest );
-            if ( !nodes.get( JSON_NODE_ITEMLIST ).isNull( ) )
-            {
-                JsonNode itemListNode = nodes.get( JSON_NODE_ITEMLIST );
-
-                for ( JsonNode itemNode : itemListNode )
-                {
-                    JsonNode groupData = itemNode.get( JSON_NODE_GROUP );                    
-                    
-                    groupName = groupData.get( JSON_NODE_GROUP_NAME ).asText( );
-
-                    if ( groupName.substring( 0, 1 ).equals( "[" ) && groupName.substring( groupName.length( ) - 1, groupName.length( ) ).equals( "]" ) && groupName.length( ) > 2 )
-                    {
-                        String[] splitDlGrName = groupName.split( "\\]" );
-                        groupName = splitDlGrName[0].substring( 1, splitDlGrName[0].length( ) );
-                    }
-                    
-                    for ( JsonNode node : itemNode.get( JSON_NODE_INTEREST_LIST ) )
-                    {
-                        createSubscriptionLink( subscriptionsMapIdName, groupName, node  );
-                    }
-                }
-            }
-        } catch ( Exception e )
+    /**
+     * Wait for the refresh of the catalog of an account
+     * 
+     * @param strAccountId
+     *            the account id
+     * @param future
+     *            the refresh
+     * @param lDeadline
+     *            the time after which the refresh is no longer waited for
+     * @return the catalog, null if the refresh has not completed before the deadline
+     */
+    private CatalogSnapshot waitCatalog( String strAccountId, CompletableFuture<CatalogSnapshot> future, long lDeadline )
+    {
+        try
         {
-            String strError = "Error occured while building list of all subscription.";
-            AppLogService.error( strError + e.getMessage( ), e );
+            return future.get( Math.max( 0, lDeadline - System.currentTimeMillis( ) ), TimeUnit.MILLISECONDS );
         }
+        catch( TimeoutException e )
+        {
+            AppLogService.error( "The catalog of account " + strAccountId + " has not been refreshed in time, the last snapshot is kept." );
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+        }
+        catch( Exception e )
+        {
+            AppLogService.error( "Error occured while refreshing the catalog of account " + strAccountId + " : " + e.getMessage( ), e );
+        }
+
+        return null;
     }
 
-    private void createSubscriptionLink( Map<String, String> subscriptionsMapIdName, String groupName, JsonNode node )
+    /**
+     * Synchronize the subscription links at the first successful run
+     * 
+     * @param catalog
+     *            the catalog of the default account
+     */
+    private void synchronizeSubscriptionLinks( CatalogSnapshot catalog )
     {
-        String strName = node.get( JSON_NODE_GROUP_NAME ).asText( );
-
-        if ( subscriptionsMapIdName.containsKey( strName ) && !node.has( JSON_NODE_DELETE_DATE )
-                && !SubscriptionLinkHome.findBySubscriptionId( Integer.parseInt( subscriptionsMapIdName.get( strName ) ) ).isPresent( ) )
+        if ( !_bSynchronized && catalog != null )
         {
-            SubscriptionLink subLink = new SubscriptionLink( );
-            
-            subLink.setSubscriptionId( Integer.parseInt( subscriptionsMapIdName.get( strName ) ) );
-            subLink.setInterestId( node.get( "ID" ).asInt( ) );
-            subLink.setGroupId( node.get( "GroupID" ).asInt( ) );
-            subLink.setDescription( StringUtils.EMPTY );
-            subLink.setLabel( strName );
-            subLink.setPictogramme( StringUtils.EMPTY );
-            subLink.setFrequency( StringUtils.EMPTY );
-            subLink.setEnabled( true );
-            subLink.setGroup( groupName );
-
-            SubscriptionLinkHome.create( subLink );
+            try
+            {
+                SubscriptionLinkSynchronizer.synchronize( new DolistCatalog( catalog ).getItems( ) );
+                _bSynchronized = true;
+            }
+            catch( Exception e )
+            {
+                AppLogService.error( "Error occured while synchronizing the subscription links : " + e.getMessage( ), e );
+            }
         }
-
     }
 
 }
@@ -35,29 +35,59 @@ package fr.paris.lutece.plugins.broadcastproxy.service;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.json.simple.JSONObject;
 
 import fr.paris.lutece.plugins.broadcastproxy.business.Feed;
+import fr.paris.lutece.plugins.broadcastproxy.business.IAsyncBroadcastProvider;
 import fr.paris.lutece.plugins.broadcastproxy.business.IBroadcastProvider;
 import fr.paris.lutece.plugins.broadcastproxy.business.Subscription;
-import fr.paris.lutece.portal.service.init.LuteceInitException;
+import fr.paris.lutece.plugins.broadcastproxy.business.providers.AsyncBroadcastProviderAdapter;
 import fr.paris.lutece.portal.service.spring.SpringContextService;
 import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
 
 public class BroadcastService
 {
 
     private static final String BEAN_BROADCAST_PROVIDER = "broadcastproxy.provider";
+    private static final String PROPERTY_ASYNC_POOL_SIZE = "broadcastproxy.provider.async.poolSize";
+    private static final String PROPERTY_ASYNC_QUEUE_SIZE = "broadcastproxy.provider.async.queueSize";
+    private static final String THREAD_NAME_PREFIX = "broadcastproxy-provider";
 
-    private static IBroadcastProvider _broadcastProvider;
-    private static BroadcastService _instance;
+    // Created when the class is initialized, so that the instance is read without lock
+    private static final BroadcastService _singleton = new BroadcastService( );
+
+    private final IBroadcastProvider _broadcastProvider;
+    private final IAsyncBroadcastProvider _asyncBroadcastProvider;
 
     /**
-     * Private constructor
+     * Private constructor : resolves the provider
      */
     private BroadcastService( )
     {
+        _broadcastProvider = (IBroadcastProvider) SpringContextService.getBean( BEAN_BROADCAST_PROVIDER );
+        AppLogService.info( "BroadcastProvider loaded : " + _broadcastProvider.getName( ) );
+
+        if ( _broadcastProvider instanceof IAsyncBroadcastProvider )
+        {
+            _asyncBroadcastProvider = (IAsyncBroadcastProvider) _broadcastProvider;
+        }
+        else
+        {
+            // Run the synchronous provider on a dedicated pool, calls are rejected with a failed future when the pool is saturated
+            int nPoolSize = AppPropertiesService.getPropertyInt( PROPERTY_ASYNC_POOL_SIZE, 20 );
+            int nQueueSize = AppPropertiesService.getPropertyInt( PROPERTY_ASYNC_QUEUE_SIZE, 1000 );
+            ThreadPoolExecutor executor = new ThreadPoolExecutor( nPoolSize, nPoolSize, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>( nQueueSize ),
+                    new BroadcastThreadFactory( THREAD_NAME_PREFIX ), new ThreadPoolExecutor.AbortPolicy( ) );
+            executor.allowCoreThreadTimeOut( true );
+
+            _asyncBroadcastProvider = new AsyncBroadcastProviderAdapter( _broadcastProvider, executor );
+        }
     }
 
     /**
@@ -71,34 +101,23 @@ public class BroadcastService
     }
 
     /**
-     * Get the unique instance of the Security Service
+     * Get the unique instance of the BroadcastService
      *
      * @return The instance
      */
-    public static synchronized BroadcastService getInstance( )
+    public static BroadcastService getInstance( )
     {
-        if ( _instance == null )
-        {
-            _instance = new BroadcastService( );
-            _instance.init( );
-        }
-
-        return _instance;
+        return _singleton;
     }
 
     /**
-     * Initialize service
-     *
-     * @throws LuteceInitException
-     *             If error while initialization
+     * get the non blocking provider
+     * 
+     * @return the async provider
      */
-    private synchronized void init( )
+    public IAsyncBroadcastProvider getAsyncProvider( )
     {
-        if ( _broadcastProvider == null )
-        {
-            _broadcastProvider = (IBroadcastProvider) SpringContextService.getBean( BEAN_BROADCAST_PROVIDER );
-            AppLogService.info( "BroadcastProvider loaded : " + _broadcastProvider.getName( ) );
-        }
+        return _asyncBroadcastProvider;
     }
 
     /**
@@ -125,6 +144,21 @@ public class BroadcastService
     {
         return _broadcastProvider.updateSubscribtions( userId, jsonSubscriptions, strAccountId );
     }
+
+    /**
+     * update several user subscriptions of an account at once
+     * 
+     * @param userId
+     * @param subscriptionsToUpdate
+     *            the subscription ids, with true to subscribe and false to unsubscribe
+     * @param strAccountId
+     * @return true if success
+     * @throws Exception
+     */
+    public boolean updateSubscribtions( String userId, Map<Integer, Boolean> subscriptionsToUpdate, String strAccountId ) throws Exception
+    {
+        return _broadcastProvider.updateSubscribtions( userId, subscriptionsToUpdate, strAccountId );
+    }
     
     /**
      * update user subscriptions to the specified subscription list
@@ -184,4 +218,88 @@ public class BroadcastService
     {
         return _broadcastProvider.getUserSubscriptionIds( strUserId, strAccountId );
     }
+
+    /**
+     * update user subscriptions to the specified subscription list without blocking the caller
+     * 
+     * @param userId
+     * @param subscriptionsList
+     * @return a future completed with true if success
+     */
+    public CompletableFuture<Boolean> updateSubscribtionsAsync( String userId, List<Subscription> subscriptionsList )
+    {
+        return _asyncBroadcastProvider.updateSubscribtionsAsync( userId, subscriptionsList );
+    }
+
+    /**
+     * update user subscriptions to the specified subscription list without blocking the caller
+     * 
+     * @param userId
+     * @param jsonSubscriptions
+     * @param strAccountId
+     * @return a future completed with true if success
+     */
+    public CompletableFuture<Boolean> updateSubscribtionsAsync( String userId, String jsonSubscriptions, String strAccountId )
+    {
+        return _asyncBroadcastProvider.updateSubscribtionsAsync( userId, jsonSubscriptions, strAccountId );
+    }
+
+    /**
+     * update user arrondissement subscriptions without blocking the caller
+     * 
+     * @param userId
+     * @param jsonSubscriptions
+     * @param strAccountId
+     * @return a future completed with true if success
+     */
+    public CompletableFuture<Boolean> updateArrondissementSubscribtionsAsync( String userId, String jsonSubscriptions, String strAccountId )
+    {
+        return _asyncBroadcastProvider.updateArrondissementSubscribtionsAsync( userId, jsonSubscriptions, strAccountId );
+    }
+
+    /**
+     * updates a Subscription bean without blocking the caller
+     * 
+     * @param sub
+     * @param strAccountId
+     * @return a future completed with true if success
+     */
+    public CompletableFuture<Boolean> updateAsync( Subscription sub, String strAccountId )
+    {
+        return _asyncBroadcastProvider.updateAsync( sub, strAccountId );
+    }
+
+    /**
+     * get the list of available feeds without blocking the caller
+     * 
+     * @return a future completed with the list
+     */
+    public CompletableFuture<List<Feed>> getFeedsAsync( )
+    {
+        return _asyncBroadcastProvider.getFeedsAsync( );
+    }
+
+    /**
+     * get all subscription by group without blocking the caller
+     * 
+     * @param typeSubscription
+     * @param strAccountId
+     * @return a future completed with the json of the subscriptions
+     */
+    public CompletableFuture<String> getAllSubscriptionByGroupAsync( String typeSubscription, String strAccountId )
+    {
+        return _asyncBroadcastProvider.getAllSubscriptionByGroupAsync( typeSubscription, strAccountId );
+    }
+
+    /**
+     * get user subscription ids without blocking the caller
+     * 
+     * @param strUserId
+     * @param strAccountId
+     * @return a future completed with the list of user subscription ids
+     */
+    public CompletableFuture<List<JSONObject>> getUserSubscriptionIdsAsync( String strUserId, String strAccountId )
+    {
+        return _asyncBroadcastProvider.getUserSubscriptionIdsAsync( strUserId, strAccountId );
+    }
 }
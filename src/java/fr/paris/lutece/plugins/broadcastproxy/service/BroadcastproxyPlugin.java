@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.service;
+
+import fr.paris.lutece.portal.service.event.LuteceUserEventManager;
+import fr.paris.lutece.portal.service.init.ShutdownService;
+import fr.paris.lutece.portal.service.init.ShutdownServiceManager;
+import fr.paris.lutece.portal.service.plugin.PluginDefaultImplementation;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * 
+ * Broadcastproxy plugin : the services are created at startup rather than by the first request, warm start from the persisted catalogs, prefetch of
+ * the subscriptions of the users at login, release of the leases at shutdown
+ *
+ */
+public class BroadcastproxyPlugin extends PluginDefaultImplementation
+{
+    private static final String PROPERTY_PREFETCH_ENABLED = "broadcastproxy.prefetch.enabled";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init( )
+    {
+        super.init( );
+
+        try
+        {
+            // Resolve the provider, build the account registry and allocate the cache before the first request
+            BroadcastService broadcastService = BroadcastService.getInstance( );
+            AccountService accountService = AccountService.getInstance( );
+            BroadcastCacheService.getInstance( );
+            AppLogService.info( "Broadcastproxy started : provider " + broadcastService.getName( ) + ", default account "
+                    + accountService.getDefaultAccountId( ) + ", " + accountService.getArrondissementNames( ).size( ) + " arrondissement accounts" );
+        }
+        catch( Exception | LinkageError e )
+        {
+            // A provider bean which can't be resolved fails the static initialization of BroadcastService with an error, the other blocks still run
+            AppLogService.error( "Error occured while initializing the broadcastproxy services : " + e.getMessage( ), e );
+        }
+
+        try
+        {
+            CacheInvalidationService.getInstance( ).setHandler( UserSubscriptionService.getInstance( )::invalidateLocally );
+        }
+        catch( Exception | LinkageError e )
+        {
+            AppLogService.error( "Error occured while initializing the broadcastproxy cache invalidations : " + e.getMessage( ), e );
+        }
+
+        try
+        {
+            ShutdownServiceManager.registerShutdownService( new LeaseShutdownService( ) );
+        }
+        catch( Exception | LinkageError e )
+        {
+            AppLogService.error( "Error occured while registering the broadcastproxy shutdown service : " + e.getMessage( ), e );
+        }
+
+        try
+        {
+            if ( AppPropertiesService.getPropertyBoolean( PROPERTY_PREFETCH_ENABLED, true ) )
+            {
+                LuteceUserEventManager.getInstance( ).register( new UserLoginPrefetchListener( ) );
+            }
+        }
+        catch( Exception | LinkageError e )
+        {
+            AppLogService.error( "Error occured while registering the broadcastproxy login prefetch : " + e.getMessage( ), e );
+        }
+
+        try
+        {
+            // The node is ready as soon as the snapshots are loaded, the provider is called in the background for the missing ones only :
+            // the others are refreshed by the daemon of the node holding their lease
+            CatalogService catalogService = CatalogService.getInstance( );
+            catalogService.init( );
+
+            for ( String strAccountId : AccountService.getInstance( ).getAccountIds( ) )
+            {
+                if ( !catalogService.hasCatalog( strAccountId ) )
+                {
+                    catalogService.refreshAsync( strAccountId );
+                }
+            }
+        }
+        catch( Exception | LinkageError e )
+        {
+            AppLogService.error( "Error occured while initializing the broadcastproxy catalogs : " + e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Release the leases of this node when the webapp is stopped
+     */
+    private static final class LeaseShutdownService implements ShutdownService
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getName( )
+        {
+            return "Broadcastproxy leases";
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void process( )
+        {
+            LeaseService.getInstance( ).releaseAll( );
+        }
+    }
+}
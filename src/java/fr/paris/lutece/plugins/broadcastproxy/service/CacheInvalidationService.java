@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.service;
+
+import java.util.function.BiConsumer;
+
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * 
+ * Cache invalidations between the nodes of a cluster, through the bus declared as the bean broadcastproxy.cacheInvalidationBus : a failure of
+ * the bus is logged and does not fail the update which has published the invalidation. The bus is resolved at its first use, when the bean is
+ * missing the invalidations are not sent to the other nodes.
+ *
+ */
+public final class CacheInvalidationService
+{
+    private static final String BEAN_CACHE_INVALIDATION_BUS = "broadcastproxy.cacheInvalidationBus";
+
+    private static final CacheInvalidationService _singleton = new CacheInvalidationService( );
+
+    private volatile ICacheInvalidationBus _bus;
+
+    /**
+     * Private constructor
+     */
+    private CacheInvalidationService( )
+    {
+    }
+
+    /**
+     * Get instance of CacheInvalidationService
+     * 
+     * @return instance of CacheInvalidationService
+     */
+    public static CacheInvalidationService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * Publish to the other nodes that the cached subscriptions of a user to an account have changed
+     * 
+     * @param strUserId
+     *            the user id
+     * @param strAccountId
+     *            the account id
+     */
+    public void publish( String strUserId, String strAccountId )
+    {
+        try
+        {
+            getBus( ).publish( strUserId, strAccountId );
+        }
+        catch( RuntimeException e )
+        {
+            AppLogService.error( "Error occured while publishing a cache invalidation for account " + strAccountId + " : " + e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Set the handler of the invalidations published by the other nodes
+     * 
+     * @param handler
+     *            the handler, called with the user id and the account id
+     */
+    public void setHandler( BiConsumer<String, String> handler )
+    {
+        getBus( ).setHandler( handler );
+    }
+
+    /**
+     * Receive the pending invalidations
+     */
+    public void poll( )
+    {
+        getBus( ).poll( );
+    }
+
+    /**
+     * Get the bus, resolved at the first call
+     * 
+     * @return the bean broadcastproxy.cacheInvalidationBus, or a bus which sends nothing if the bean can't be resolved
+     */
+    private ICacheInvalidationBus getBus( )
+    {
+        ICacheInvalidationBus bus = _bus;
+        if ( bus == null )
+        {
+            synchronized( this )
+            {
+                bus = _bus;
+                if ( bus == null )
+                {
+                    try
+                    {
+                        bus = SpringContextService.getBean( BEAN_CACHE_INVALIDATION_BUS );
+                    }
+                    catch( RuntimeException e )
+                    {
+                        AppLogService.error( "Error occured while resolving the cache invalidation bus, the invalidations are not sent to the other nodes : "
+                                + e.getMessage( ), e );
+                    }
+
+                    if ( bus == null )
+                    {
+                        bus = new LocalCacheInvalidationBus( );
+                    }
+                    _bus = bus;
+                }
+            }
+        }
+
+        return bus;
+    }
+
+    /**
+     * Bus of a single node : nothing is sent nor received
+     */
+    private static final class LocalCacheInvalidationBus implements ICacheInvalidationBus
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void publish( String strUserId, String strAccountId )
+        {
+            // No other node
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setHandler( BiConsumer<String, String> handler )
+        {
+            // No invalidation is received
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 
+ * Counters of the cache of the subscriptions of the users to one account : the requests served from the cache (fresh or stale), the misses, the
+ * loads from the provider with a histogram of their durations, and the invalidations
+ *
+ */
+public final class CacheMetrics
+{
+    // Upper bounds of the load time buckets, in milliseconds : the last bucket has no upper bound
+    private static final long [ ] LOAD_TIME_BOUNDS = {
+            10, 50, 100, 250, 500, 1000, 2500, 5000, 10000
+    };
+
+    private final LongAdder _hits = new LongAdder( );
+    private final LongAdder _staleHits = new LongAdder( );
+    private final LongAdder _misses = new LongAdder( );
+    private final LongAdder _loads = new LongAdder( );
+    private final LongAdder _loadFailures = new LongAdder( );
+    private final LongAdder _loadTime = new LongAdder( );
+    private final LongAdder _invalidations = new LongAdder( );
+    private final LongAdder [ ] _loadTimeBuckets = new LongAdder [ LOAD_TIME_BOUNDS.length + 1];
+
+    /**
+     * Constructor
+     */
+    public CacheMetrics( )
+    {
+        for ( int i = 0; i < _loadTimeBuckets.length; i++ )
+        {
+            _loadTimeBuckets [i] = new LongAdder( );
+        }
+    }
+
+    /**
+     * Record a request served from the cache
+     */
+    public void recordHit( )
+    {
+        _hits.increment( );
+    }
+
+    /**
+     * Record a request served from the cache with stale subscriptions
+     */
+    public void recordStaleHit( )
+    {
+        _staleHits.increment( );
+    }
+
+    /**
+     * Record a request which had to wait for a load
+     */
+    public void recordMiss( )
+    {
+        _misses.increment( );
+    }
+
+    /**
+     * Record a load from the provider
+     * 
+     * @param lStartTime
+     *            the start of the load, from System.nanoTime
+     * @param bSuccess
+     *            false if the subscriptions could not be retrieved
+     */
+    public void recordLoad( long lStartTime, boolean bSuccess )
+    {
+        long lMillis = TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - lStartTime );
+
+        _loads.increment( );
+        if ( !bSuccess )
+        {
+            _loadFailures.increment( );
+        }
+        _loadTime.add( lMillis );
+
+        int nBucket = 0;
+        while ( nBucket < LOAD_TIME_BOUNDS.length && lMillis > LOAD_TIME_BOUNDS [nBucket] )
+        {
+            nBucket++;
+        }
+        _loadTimeBuckets [nBucket].increment( );
+    }
+
+    /**
+     * Record the removal of a cached entry
+     */
+    public void recordInvalidation( )
+    {
+        _invalidations.increment( );
+    }
+
+    /**
+     * Returns the number of requests served from the cache with fresh subscriptions
+     * 
+     * @return the number of hits
+     */
+    public long getHits( )
+    {
+        return _hits.sum( );
+    }
+
+    /**
+     * Returns the number of requests served from the cache with stale subscriptions
+     * 
+     * @return the number of stale hits
+     */
+    public long getStaleHits( )
+    {
+        return _staleHits.sum( );
+    }
+
+    /**
+     * Returns the number of requests which had to wait for a load
+     * 
+     * @return the number of misses
+     */
+    public long getMisses( )
+    {
+        return _misses.sum( );
+    }
+
+    /**
+     * Returns the part of the requests served from the cache
+     * 
+     * @return the hit ratio, from 0 to 1
+     */
+    public double getHitRatio( )
+    {
+        long lHits = getHits( ) + getStaleHits( );
+        long lRequests = lHits + getMisses( );
+
+        return lRequests == 0 ? 0 : (double) lHits / lRequests;
+    }
+
+    /**
+     * Returns the number of loads from the provider, synchronous or in the background
+     * 
+     * @return the number of loads
+     */
+    public long getLoads( )
+    {
+        return _loads.sum( );
+    }
+
+    /**
+     * Returns the number of loads which have failed
+     * 
+     * @return the number of failures
+     */
+    public long getLoadFailures( )
+    {
+        return _loadFailures.sum( );
+    }
+
+    /**
+     * Returns the average duration of the loads
+     * 
+     * @return the duration in milliseconds
+     */
+    public long getAverageLoadTime( )
+    {
+        long lLoads = getLoads( );
+
+        return lLoads == 0 ? 0 : _loadTime.sum( ) / lLoads;
+    }
+
+    /**
+     * Returns the number of removed entries
+     * 
+     * @return the number of invalidations
+     */
+    public long getInvalidations( )
+    {
+        return _invalidations.sum( );
+    }
+
+    /**
+     * Returns the number of loads in each bucket of durations
+     * 
+     * @return the counts, in the order of the bounds, the last one for the loads longer than the last bound
+     */
+    public long [ ] getLoadTimeHistogram( )
+    {
+        long [ ] arrCounts = new long [ _loadTimeBuckets.length];
+        for ( int i = 0; i < arrCounts.length; i++ )
+        {
+            arrCounts [i] = _loadTimeBuckets [i].sum( );
+        }
+
+        return arrCounts;
+    }
+
+    /**
+     * Returns the upper bounds of the buckets of durations
+     * 
+     * @return the bounds in milliseconds
+     */
+    public static long [ ] getLoadTimeBounds( )
+    {
+        return LOAD_TIME_BOUNDS.clone( );
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.json.simple.JSONObject;
+
+/**
+ * 
+ * Metrics of the cache of the subscriptions of the users, by account, of the store holding them, of the other bounded caches, of the admission
+ * control of the requests and of the throttling of the updates
+ *
+ */
+public final class CacheMetricsService
+{
+    private static final String KEY_ENTRIES = "entries";
+    private static final String KEY_STORE = "store";
+    private static final String KEY_CAPACITY = "capacity";
+    private static final String KEY_ALLOCATED_BYTES = "allocatedBytes";
+    private static final String KEY_USED_BYTES = "usedBytes";
+    private static final String KEY_EVICTIONS_EXPIRED = "evictionsExpired";
+    private static final String KEY_EVICTIONS_CAPACITY = "evictionsCapacity";
+    private static final String KEY_REJECTIONS = "rejections";
+    private static final String KEY_OVERSIZED = "oversized";
+    private static final String KEY_LOAD_TIME_BOUNDS = "loadTimeBounds";
+    private static final String KEY_ACCOUNTS = "accounts";
+    private static final String KEY_ACCOUNT_ID = "accountId";
+    private static final String KEY_HITS = "hits";
+    private static final String KEY_STALE_HITS = "staleHits";
+    private static final String KEY_MISSES = "misses";
+    private static final String KEY_HIT_RATIO = "hitRatio";
+    private static final String KEY_LOADS = "loads";
+    private static final String KEY_LOAD_FAILURES = "loadFailures";
+    private static final String KEY_AVERAGE_LOAD_TIME = "averageLoadTime";
+    private static final String KEY_LOAD_TIME_HISTOGRAM = "loadTimeHistogram";
+    private static final String KEY_INVALIDATIONS = "invalidations";
+    private static final String KEY_CACHES = "caches";
+    private static final String KEY_NAME = "name";
+    private static final String KEY_MAX_ENTRIES = "maxEntries";
+    private static final String KEY_EVICTIONS = "evictions";
+    private static final String KEY_ADMISSION = "admission";
+    private static final String KEY_THROTTLED_UPDATES = "throttledUpdates";
+
+    private static final CacheMetricsService _singleton = new CacheMetricsService( );
+
+    private final Map<String, CacheMetrics> _mapMetrics = new ConcurrentHashMap<>( );
+    private final Map<String, BoundedCache<?, ?>> _mapCaches = new ConcurrentSkipListMap<>( );
+
+    /**
+     * Private constructor
+     */
+    private CacheMetricsService( )
+    {
+    }
+
+    /**
+     * Get instance of CacheMetricsService
+     * 
+     * @return instance of CacheMetricsService
+     */
+    public static CacheMetricsService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * Returns the metrics of an account
+     * 
+     * @param strAccountId
+     *            the account id
+     * @return the metrics
+     */
+    public CacheMetrics getMetrics( String strAccountId )
+    {
+        return _mapMetrics.computeIfAbsent( strAccountId, strKey -> new CacheMetrics( ) );
+    }
+
+    /**
+     * Register a bounded cache, replacing the cache of the same name
+     * 
+     * @param cache
+     *            the cache
+     */
+    public void register( BoundedCache<?, ?> cache )
+    {
+        _mapCaches.put( cache.getName( ), cache );
+    }
+
+    /**
+     * Forget the metrics of all the accounts, of the admission control and of the throttling
+     */
+    public void reset( )
+    {
+        _mapMetrics.clear( );
+        AdmissionService.getInstance( ).reset( );
+        UpdateThrottleService.getInstance( ).reset( );
+    }
+
+    /**
+     * Returns the current values of the metrics : the cache, the store if it is enabled and each account, the default account first
+     * 
+     * @return the values, in maps and lists of numbers and strings
+     */
+    public Map<String, Object> getValues( )
+    {
+        Map<String, Object> mapValues = new LinkedHashMap<>( );
+        BroadcastCacheService cacheService = BroadcastCacheService.getInstance( );
+        mapValues.put( KEY_ENTRIES, cacheService.getCacheSize( ) );
+
+        UserSubscriptionStore store = cacheService.getStore( );
+        if ( store != null )
+        {
+            Map<String, Object> mapStore = new LinkedHashMap<>( );
+            mapStore.put( KEY_CAPACITY, store.getCapacity( ) );
+            mapStore.put( KEY_ALLOCATED_BYTES, store.getMemorySize( ) );
+            mapStore.put( KEY_USED_BYTES, store.getUsedMemorySize( ) );
+            mapStore.put( KEY_EVICTIONS_EXPIRED, store.getEvictionsExpired( ) );
+            mapStore.put( KEY_EVICTIONS_CAPACITY, store.getEvictionsCapacity( ) );
+            mapStore.put( KEY_REJECTIONS, store.getRejections( ) );
+            mapStore.put( KEY_OVERSIZED, store.getOversized( ) );
+            mapValues.put( KEY_STORE, mapStore );
+        }
+
+        mapValues.put( KEY_LOAD_TIME_BOUNDS, toList( CacheMetrics.getLoadTimeBounds( ) ) );
+
+        List<Map<String, Object>> listAccounts = new ArrayList<>( );
+        for ( String strAccountId : AccountService.getInstance( ).getAccountIds( ) )
+        {
+            CacheMetrics metrics = getMetrics( strAccountId );
+
+            Map<String, Object> mapAccount = new LinkedHashMap<>( );
+            mapAccount.put( KEY_ACCOUNT_ID, strAccountId );
+            mapAccount.put( KEY_HITS, metrics.getHits( ) );
+            mapAccount.put( KEY_STALE_HITS, metrics.getStaleHits( ) );
+            mapAccount.put( KEY_MISSES, metrics.getMisses( ) );
+            mapAccount.put( KEY_HIT_RATIO, metrics.getHitRatio( ) );
+            mapAccount.put( KEY_LOADS, metrics.getLoads( ) );
+            mapAccount.put( KEY_LOAD_FAILURES, metrics.getLoadFailures( ) );
+            mapAccount.put( KEY_AVERAGE_LOAD_TIME, metrics.getAverageLoadTime( ) );
+            mapAccount.put( KEY_LOAD_TIME_HISTOGRAM, toList( metrics.getLoadTimeHistogram( ) ) );
+            mapAccount.put( KEY_INVALIDATIONS, metrics.getInvalidations( ) );
+            listAccounts.add( mapAccount );
+        }
+        mapValues.put( KEY_ACCOUNTS, listAccounts );
+
+        List<Map<String, Object>> listCaches = new ArrayList<>( );
+        for ( BoundedCache<?, ?> cache : _mapCaches.values( ) )
+        {
+            Map<String, Object> mapCache = new LinkedHashMap<>( );
+            mapCache.put( KEY_NAME, cache.getName( ) );
+            mapCache.put( KEY_ENTRIES, cache.size( ) );
+            mapCache.put( KEY_MAX_ENTRIES, cache.getMaxEntries( ) );
+            mapCache.put( KEY_HITS, cache.getHits( ) );
+            mapCache.put( KEY_MISSES, cache.getMisses( ) );
+            mapCache.put( KEY_EVICTIONS, cache.getEvictions( ) );
+            mapCache.put( KEY_REJECTIONS, cache.getRejections( ) );
+            listCaches.add( mapCache );
+        }
+        mapValues.put( KEY_CACHES, listCaches );
+
+        mapValues.put( KEY_ADMISSION, AdmissionService.getInstance( ).getValues( ) );
+        mapValues.put( KEY_THROTTLED_UPDATES, UpdateThrottleService.getInstance( ).getThrottled( ) );
+
+        return mapValues;
+    }
+
+    /**
+     * Returns the current values of the metrics as JSON
+     * 
+     * @return the JSON string
+     */
+    public String getValuesAsJson( )
+    {
+        return JSONObject.toJSONString( getValues( ) );
+    }
+
+    private static List<Long> toList( long [ ] arrValues )
+    {
+        List<Long> listValues = new ArrayList<>( arrValues.length );
+        for ( long lValue : arrValues )
+        {
+            listValues.add( lValue );
+        }
+
+        return listValues;
+    }
+}
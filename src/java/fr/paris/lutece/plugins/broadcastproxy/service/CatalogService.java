@@ -0,0 +1,485 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.paris.lutece.plugins.broadcastproxy.business.CatalogDelta;
+import fr.paris.lutece.plugins.broadcastproxy.business.CatalogItem;
+import fr.paris.lutece.plugins.broadcastproxy.business.CatalogSnapshot;
+import fr.paris.lutece.plugins.broadcastproxy.business.CatalogSnapshotHome;
+import fr.paris.lutece.plugins.broadcastproxy.business.ICatalogListener;
+import fr.paris.lutece.plugins.broadcastproxy.business.providers.dolist.DolistCatalog;
+import fr.paris.lutece.plugins.broadcastproxy.business.providers.dolist.DolistConstants;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * 
+ * Keeps the last good catalog of each account : loaded from the database at startup, then refreshed from the provider. An unchanged catalog is
+ * detected by its fingerprint and costs nothing, a changed one is published as a {@link CatalogDelta} to the {@link ICatalogListener} beans.
+ *
+ */
+public final class CatalogService
+{
+    private static final String JSON_NODE_ITEMLIST = AppPropertiesService.getProperty( "dolist.jsonNode.ItemList" );
+    private static final String FINGERPRINT_ALGORITHM = "SHA-256";
+
+    private static final CatalogService _singleton = new CatalogService( );
+
+    private final Map<String, CatalogSnapshot> _mapCatalogs = new ConcurrentHashMap<>( );
+    private final Map<String, Timestamp> _mapLastSuccess = new ConcurrentHashMap<>( );
+
+    // Refreshes in progress, by account : the concurrent refreshes of an account share the same provider calls
+    private final Map<String, CompletableFuture<CatalogSnapshot>> _mapPendingRefreshes = new ConcurrentHashMap<>( );
+
+    // The catalog of an account is compared, replaced and its delta published by one thread at a time
+    private final Map<String, Object> _mapLocks = new ConcurrentHashMap<>( );
+
+    /**
+     * Private constructor
+     */
+    private CatalogService( )
+    {
+    }
+
+    /**
+     * Get instance of CatalogService
+     * 
+     * @return instance of CatalogService
+     */
+    public static CatalogService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * Load the persisted snapshots, no call is made to the provider
+     */
+    public void init( )
+    {
+        for ( CatalogSnapshot snapshot : CatalogSnapshotHome.getCatalogSnapshotsList( ) )
+        {
+            _mapCatalogs.put( snapshot.getAccountId( ), snapshot );
+        }
+
+        AppLogService.info( "Broadcastproxy catalog snapshots loaded : " + _mapCatalogs.keySet( ) );
+    }
+
+    /**
+     * Get the catalog of an account, the provider is called only if there is no snapshot yet for this account
+     * 
+     * @param strAccountId
+     *            the account id
+     * @return the catalog, null if no catalog could be retrieved
+     */
+    public CatalogSnapshot getCatalog( String strAccountId )
+    {
+        if ( StringUtils.isEmpty( strAccountId ) )
+        {
+            return null;
+        }
+
+        CatalogSnapshot snapshot = _mapCatalogs.get( strAccountId );
+        if ( snapshot == null )
+        {
+            snapshot = refresh( strAccountId );
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Tells if a catalog is available for an account, without calling the provider
+     * 
+     * @param strAccountId
+     *            the account id
+     * @return true if there is a catalog
+     */
+    public boolean hasCatalog( String strAccountId )
+    {
+        return StringUtils.isNotEmpty( strAccountId ) && _mapCatalogs.containsKey( strAccountId );
+    }
+
+    /**
+     * Get the date of the last successful refresh of an account, whether the catalog has changed or not
+     * 
+     * @param strAccountId
+     *            the account id
+     * @return the date, null if the catalog has not been successfully refreshed since the startup
+     */
+    public Timestamp getLastSuccess( String strAccountId )
+    {
+        return _mapLastSuccess.get( strAccountId );
+    }
+
+    /**
+     * Reload the catalog of an account from the database, as stored by the node which holds the lease of this account. The provider is not called.
+     * 
+     * @param strAccountId
+     *            the account id
+     * @return the current catalog, null if there is no catalog for this account
+     */
+    public CatalogSnapshot reload( String strAccountId )
+    {
+        synchronized( getLock( strAccountId ) )
+        {
+            CatalogSnapshot current = _mapCatalogs.get( strAccountId );
+
+            try
+            {
+                CatalogSnapshot snapshot = CatalogSnapshotHome.findByAccountId( strAccountId ).orElse( null );
+
+                if ( snapshot != null && ( current == null || !StringUtils.equals( snapshot.getFingerprint( ), current.getFingerprint( ) ) ) )
+                {
+                    replace( strAccountId, current, snapshot );
+                    return snapshot;
+                }
+            }
+            catch( Exception e )
+            {
+                AppLogService.error( "Error occured while reloading the catalog snapshot of account " + strAccountId + " : " + e.getMessage( ), e );
+            }
+
+            return current;
+        }
+    }
+
+    /**
+     * Fetch the catalog of an account from the provider and persist it
+     * 
+     * @param strAccountId
+     *            the account id
+     * @return the new catalog, or the last good one if the provider did not answer
+     */
+    public CatalogSnapshot refresh( String strAccountId )
+    {
+        return refreshAsync( strAccountId ).join( );
+    }
+
+    /**
+     * Fetch the catalog of an account from the provider and persist it, without blocking the caller
+     * 
+     * @param strAccountId
+     *            the account id
+     * @return a future completed with the new catalog, or the last good one if the provider did not answer
+     */
+    public CompletableFuture<CatalogSnapshot> refreshAsync( String strAccountId )
+    {
+        if ( StringUtils.isEmpty( strAccountId ) )
+        {
+            return CompletableFuture.completedFuture( null );
+        }
+
+        CompletableFuture<CatalogSnapshot> future = new CompletableFuture<>( );
+        CompletableFuture<CatalogSnapshot> pendingRefresh = _mapPendingRefreshes.putIfAbsent( strAccountId, future );
+        if ( pendingRefresh != null )
+        {
+            return pendingRefresh;
+        }
+
+        CompletableFuture<CatalogSnapshot> refresh;
+        try
+        {
+            BroadcastService broadcastService = BroadcastService.getInstance( );
+            CompletableFuture<String> futureSubscriptions = broadcastService.getAllSubscriptionByGroupAsync( DolistConstants.TYPE_SUBSCRIPTION,
+                    strAccountId );
+            CompletableFuture<String> futureInterests = broadcastService.getAllSubscriptionByGroupAsync( DolistConstants.TYPE_INTEREST, strAccountId );
+            refresh = futureSubscriptions.thenCombine( futureInterests,
+                    ( strSubscriptions, strInterests ) -> update( strAccountId, strSubscriptions, strInterests ) );
+        }
+        catch( RuntimeException e )
+        {
+            refresh = new CompletableFuture<>( );
+            refresh.completeExceptionally( e );
+        }
+
+        refresh.whenComplete( ( snapshot, e ) -> {
+            _mapPendingRefreshes.remove( strAccountId, future );
+            if ( e != null )
+            {
+                AppLogService.error( "Error occured while refreshing the catalog of account " + strAccountId + " : " + e.getMessage( ), e );
+                future.complete( _mapCatalogs.get( strAccountId ) );
+            }
+            else
+            {
+                future.complete( snapshot );
+            }
+        } );
+
+        return future;
+    }
+
+    /**
+     * Replace the catalog of an account if the fetched one is valid and has changed
+     * 
+     * @param strAccountId
+     *            the account id
+     * @param strSubscriptions
+     *            the subscriptions catalog
+     * @param strInterests
+     *            the interests catalog
+     * @return the current catalog of the account
+     */
+    private CatalogSnapshot update( String strAccountId, String strSubscriptions, String strInterests )
+    {
+        synchronized( getLock( strAccountId ) )
+        {
+            CatalogSnapshot current = _mapCatalogs.get( strAccountId );
+            String strFingerprint = getFingerprint( strSubscriptions, strInterests );
+
+            if ( current != null && strFingerprint.equals( current.getFingerprint( ) ) )
+            {
+                // Unchanged catalog, already validated : nothing to parse nor to store
+                _mapLastSuccess.put( strAccountId, new Timestamp( System.currentTimeMillis( ) ) );
+                return current;
+            }
+
+            if ( !isValidCatalog( strSubscriptions ) || !isValidCatalog( strInterests ) )
+            {
+                // Keep the last good catalog
+                AppLogService.error( "Invalid catalog received for account " + strAccountId + ", the last snapshot is kept." );
+                return current;
+            }
+
+            _mapLastSuccess.put( strAccountId, new Timestamp( System.currentTimeMillis( ) ) );
+
+            CatalogSnapshot snapshot = new CatalogSnapshot( );
+            snapshot.setAccountId( strAccountId );
+            snapshot.setSubscriptions( strSubscriptions );
+            snapshot.setInterests( strInterests );
+            snapshot.setFingerprint( strFingerprint );
+            snapshot.setDateUpdate( new Timestamp( System.currentTimeMillis( ) ) );
+
+            try
+            {
+                CatalogSnapshotHome.save( snapshot );
+            }
+            catch( Exception e )
+            {
+                AppLogService.error( "Error occured while saving the catalog snapshot of account " + strAccountId + " : " + e.getMessage( ), e );
+            }
+
+            replace( strAccountId, current, snapshot );
+
+            return snapshot;
+        }
+    }
+
+    /**
+     * Get the lock of an account
+     * 
+     * @param strAccountId
+     *            the account id
+     * @return the lock
+     */
+    private Object getLock( String strAccountId )
+    {
+        return _mapLocks.computeIfAbsent( strAccountId, k -> new Object( ) );
+    }
+
+    /**
+     * Replace the catalog of an account and publish the changes
+     * 
+     * @param strAccountId
+     *            the account id
+     * @param current
+     *            the current catalog, may be null
+     * @param snapshot
+     *            the new catalog
+     */
+    private void replace( String strAccountId, CatalogSnapshot current, CatalogSnapshot snapshot )
+    {
+        _mapCatalogs.put( strAccountId, snapshot );
+
+        CatalogDelta delta = getDelta( strAccountId, current, snapshot );
+        if ( !delta.isEmpty( ) )
+        {
+            AppLogService.info( "Broadcastproxy catalog changed, " + delta );
+            notifyListeners( delta );
+        }
+    }
+
+    /**
+     * Compute the structural changes between two catalogs
+     * 
+     * @param strAccountId
+     *            the account id
+     * @param previous
+     *            the previous catalog, may be null
+     * @param snapshot
+     *            the new catalog
+     * @return the delta
+     */
+    private static CatalogDelta getDelta( String strAccountId, CatalogSnapshot previous, CatalogSnapshot snapshot )
+    {
+        Collection<CatalogItem> listPreviousItems = ( previous != null ) ? new DolistCatalog( previous ).getItems( ) : Collections.emptyList( );
+        List<CatalogItem> listItems = new DolistCatalog( snapshot ).getItems( );
+
+        Map<String, CatalogItem> mapPrevious = new HashMap<>( );
+        for ( CatalogItem item : listPreviousItems )
+        {
+            mapPrevious.put( item.getKey( ), item );
+        }
+
+        CatalogDelta delta = new CatalogDelta( strAccountId, listItems );
+        for ( CatalogItem item : listItems )
+        {
+            CatalogItem previousItem = mapPrevious.remove( item.getKey( ) );
+
+            if ( previousItem == null )
+            {
+                delta.getAdded( ).add( item );
+                continue;
+            }
+            if ( !StringUtils.equals( previousItem.getName( ), item.getName( ) ) )
+            {
+                delta.getRenamed( ).add( item );
+            }
+            if ( previousItem.isEnabled( ) && !item.isEnabled( ) )
+            {
+                delta.getDisabled( ).add( item );
+            }
+            else
+                if ( !previousItem.isEnabled( ) && item.isEnabled( ) )
+                {
+                    delta.getEnabled( ).add( item );
+                }
+        }
+        delta.getRemoved( ).addAll( mapPrevious.values( ) );
+
+        return delta;
+    }
+
+    /**
+     * Publish the changes of a catalog to the listeners, a failing listener does not prevent the others from being notified
+     * 
+     * @param delta
+     *            the delta
+     */
+    private static void notifyListeners( CatalogDelta delta )
+    {
+        for ( ICatalogListener listener : SpringContextService.getBeansOfType( ICatalogListener.class ) )
+        {
+            try
+            {
+                listener.processCatalogChange( delta );
+            }
+            catch( Exception e )
+            {
+                AppLogService.error( "Error occured in catalog listener " + listener.getClass( ).getName( ) + " : " + e.getMessage( ), e );
+            }
+        }
+    }
+
+    /**
+     * Compute the fingerprint of a catalog
+     * 
+     * @param strSubscriptions
+     *            the subscriptions catalog
+     * @param strInterests
+     *            the interests catalog
+     * @return the hexadecimal SHA-256 of both catalogs
+     */
+    private static String getFingerprint( String strSubscriptions, String strInterests )
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance( FINGERPRINT_ALGORITHM );
+            digest.update( StringUtils.defaultString( strSubscriptions ).getBytes( StandardCharsets.UTF_8 ) );
+            digest.update( (byte) 0 );
+            digest.update( StringUtils.defaultString( strInterests ).getBytes( StandardCharsets.UTF_8 ) );
+
+            StringBuilder sbFingerprint = new StringBuilder( );
+            for ( byte b : digest.digest( ) )
+            {
+                sbFingerprint.append( String.format( "%02x", b ) );
+            }
+
+            return sbFingerprint.toString( );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * Check that a catalog has been returned : an error or an empty response must not replace a good snapshot. An account without items may have a
+     * null item list, it is an empty catalog, but a response without item list is an error.
+     * 
+     * @param strCatalog
+     *            the catalog
+     * @return true if the catalog is a JSON object whose item list is an array or null
+     */
+    private boolean isValidCatalog( String strCatalog )
+    {
+        if ( StringUtils.isEmpty( strCatalog ) )
+        {
+            return false;
+        }
+
+        try
+        {
+            JsonNode catalogNode = new ObjectMapper( ).readTree( strCatalog );
+            if ( catalogNode == null || !catalogNode.isObject( ) )
+            {
+                return false;
+            }
+
+            JsonNode itemListNode = catalogNode.get( JSON_NODE_ITEMLIST );
+            return itemListNode != null && ( itemListNode.isNull( ) || itemListNode.isArray( ) );
+        }
+        catch( Exception e )
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.service;
+
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import fr.paris.lutece.plugins.broadcastproxy.business.CacheInvalidation;
+import fr.paris.lutece.plugins.broadcastproxy.business.CacheInvalidationHome;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * 
+ * Default cache invalidation bus : the invalidations are stored in a table shared by the nodes and polled by each of them. The invalidations of
+ * the last polls are read again, to receive those committed after a poll with an earlier date, and the ones already handled are skipped. The
+ * nodes must have synchronized clocks.
+ *
+ */
+public class DatabaseCacheInvalidationBus implements ICacheInvalidationBus
+{
+    private static final String PROPERTY_OVERLAP = "broadcastproxy.cache.invalidation.overlap";
+    private static final long DEFAULT_OVERLAP = 60;
+    private static final String PROPERTY_RETENTION = "broadcastproxy.cache.invalidation.retention";
+    private static final long DEFAULT_RETENTION = 3600;
+    private static final long CLEANUP_INTERVAL = TimeUnit.MINUTES.toMillis( 5 );
+
+    private volatile BiConsumer<String, String> _handler;
+
+    // Date of each handled invalidation, by id, until it leaves the overlap window
+    private final Map<Integer, Long> _mapHandled = new HashMap<>( );
+    private long _lLastPoll = System.currentTimeMillis( );
+    private long _lLastCleanup;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish( String strUserId, String strAccountId )
+    {
+        CacheInvalidation cacheInvalidation = new CacheInvalidation( );
+        cacheInvalidation.setUserId( strUserId );
+        cacheInvalidation.setAccountId( strAccountId );
+        cacheInvalidation.setNodeId( LeaseService.getInstance( ).getNodeId( ) );
+        cacheInvalidation.setDateCreation( new Timestamp( System.currentTimeMillis( ) ) );
+
+        CacheInvalidationHome.create( cacheInvalidation );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setHandler( BiConsumer<String, String> handler )
+    {
+        _handler = handler;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void poll( )
+    {
+        BiConsumer<String, String> handler = _handler;
+        if ( handler == null )
+        {
+            // Not ready : the invalidations are read once the handler is set, from the last poll
+            return;
+        }
+
+        long lNow = System.currentTimeMillis( );
+        long lSince = _lLastPoll - TimeUnit.SECONDS.toMillis( AppPropertiesService.getPropertyLong( PROPERTY_OVERLAP, DEFAULT_OVERLAP ) );
+        String strNodeId = LeaseService.getInstance( ).getNodeId( );
+
+        List<CacheInvalidation> listInvalidations = CacheInvalidationHome.findSince( new Timestamp( lSince ) );
+        for ( CacheInvalidation cacheInvalidation : listInvalidations )
+        {
+            if ( _mapHandled.put( cacheInvalidation.getId( ), cacheInvalidation.getDateCreation( ).getTime( ) ) == null
+                    && !strNodeId.equals( cacheInvalidation.getNodeId( ) ) )
+            {
+                handler.accept( cacheInvalidation.getUserId( ), cacheInvalidation.getAccountId( ) );
+            }
+        }
+
+        // The invalidations before the overlap window won't be read again
+        _mapHandled.values( ).removeIf( lDate -> lDate < lSince );
+        _lLastPoll = lNow;
+
+        if ( lNow - _lLastCleanup > CLEANUP_INTERVAL )
+        {
+            long lRetention = TimeUnit.SECONDS.toMillis( AppPropertiesService.getPropertyLong( PROPERTY_RETENTION, DEFAULT_RETENTION ) );
+            CacheInvalidationHome.removeBefore( new Timestamp( lNow - lRetention ) );
+            _lLastCleanup = lNow;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.service;
+
+import java.util.Arrays;
+
+/**
+ * 
+ * Approximate access frequencies of a large number of keys in a fixed memory : a count-min sketch of 4 bits counters, packed by 16 in longs. The
+ * first access to a key is only recorded in a doorkeeper bloom filter, so that the keys seen once don't fill the counters. The counters are
+ * halved and the doorkeeper is cleared when the number of recorded accesses reaches ten times the number of counters, so that the old accesses
+ * fade away.
+ *
+ */
+public final class FrequencySketch
+{
+    private static final long [ ] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNTER = 15;
+    private static final int MIN_TABLE_SIZE = 64;
+    private static final int DOORKEEPER_HASHES = 3;
+
+    private final long [ ] _table;
+    private final long [ ] _doorkeeper;
+    private final int _nTableMask;
+    private final int _nSampleSize;
+    private int _nSize;
+
+    /**
+     * Constructor
+     * 
+     * @param nMaxEntries
+     *            the number of keys whose frequencies should be accurate
+     */
+    public FrequencySketch( int nMaxEntries )
+    {
+        int nTableSize = Math.max( MIN_TABLE_SIZE, Integer.highestOneBit( Math.max( 1, Math.min( nMaxEntries, 1 << 30 ) ) - 1 ) << 1 );
+        _table = new long [ nTableSize];
+        _doorkeeper = new long [ nTableSize];
+        _nTableMask = nTableSize - 1;
+        _nSampleSize = 10 * nTableSize;
+    }
+
+    /**
+     * Returns the estimated number of accesses to a key
+     * 
+     * @param lHash
+     *            the hash of the key
+     * @return the frequency, from 0 to 16
+     */
+    public synchronized int frequency( long lHash )
+    {
+        if ( !isInDoorkeeper( lHash ) )
+        {
+            return 0;
+        }
+
+        int nFrequency = MAX_COUNTER;
+        for ( int i = 0; i < SEEDS.length; i++ )
+        {
+            long lIndex = indexOf( lHash, i );
+            int nCounter = (int) ( ( _table [(int) lIndex] >>> ( lIndex >>> 32 ) ) & MAX_COUNTER );
+            nFrequency = Math.min( nFrequency, nCounter );
+        }
+
+        return nFrequency + 1;
+    }
+
+    /**
+     * Record an access to a key
+     * 
+     * @param lHash
+     *            the hash of the key
+     */
+    public synchronized void increment( long lHash )
+    {
+        if ( !isInDoorkeeper( lHash ) )
+        {
+            addToDoorkeeper( lHash );
+            if ( ++_nSize >= _nSampleSize )
+            {
+                reset( );
+            }
+            return;
+        }
+
+        boolean bAdded = false;
+        for ( int i = 0; i < SEEDS.length; i++ )
+        {
+            long lIndex = indexOf( lHash, i );
+            int nTableIndex = (int) lIndex;
+            long lShift = lIndex >>> 32;
+
+            if ( ( ( _table [nTableIndex] >>> lShift ) & MAX_COUNTER ) < MAX_COUNTER )
+            {
+                _table [nTableIndex] += 1L << lShift;
+                bAdded = true;
+            }
+        }
+
+        if ( bAdded && ++_nSize >= _nSampleSize )
+        {
+            reset( );
+        }
+    }
+
+    /**
+     * Forget all the recorded accesses
+     */
+    public synchronized void clear( )
+    {
+        Arrays.fill( _table, 0L );
+        Arrays.fill( _doorkeeper, 0L );
+        _nSize = 0;
+    }
+
+    /**
+     * Halve all the counters and clear the doorkeeper
+     */
+    private void reset( )
+    {
+        for ( int i = 0; i < _table.length; i++ )
+        {
+            _table [i] = ( _table [i] >>> 1 ) & RESET_MASK;
+        }
+        Arrays.fill( _doorkeeper, 0L );
+        _nSize /= 2;
+    }
+
+    private boolean isInDoorkeeper( long lHash )
+    {
+        for ( int i = 0; i < DOORKEEPER_HASHES; i++ )
+        {
+            long lBit = doorkeeperBitOf( lHash, i );
+            if ( ( _doorkeeper [(int) ( lBit >>> 6 )] & ( 1L << lBit ) ) == 0 )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void addToDoorkeeper( long lHash )
+    {
+        for ( int i = 0; i < DOORKEEPER_HASHES; i++ )
+        {
+            long lBit = doorkeeperBitOf( lHash, i );
+            _doorkeeper [(int) ( lBit >>> 6 )] |= 1L << lBit;
+        }
+    }
+
+    /**
+     * Returns a bit of a key in the doorkeeper
+     * 
+     * @param lHash
+     *            the hash of the key
+     * @param nHash
+     *            the number of the hash function
+     * @return the position of the bit
+     */
+    private long doorkeeperBitOf( long lHash, int nHash )
+    {
+        long lMixed = ( lHash ^ SEEDS [SEEDS.length - 1 - nHash] ) * 0x9e3779b97f4a7c15L;
+        lMixed ^= lMixed >>> 29;
+
+        return lMixed & ( ( (long) _doorkeeper.length << 6 ) - 1 );
+    }
+
+    /**
+     * Returns the position of the counter of a key for a row of the sketch
+     * 
+     * @param lHash
+     *            the hash of the key
+     * @param nRow
+     *            the row
+     * @return the index in the table in the low 32 bits, the shift of the counter in the long in the high 32 bits
+     */
+    private long indexOf( long lHash, int nRow )
+    {
+        long lMixed = ( lHash + SEEDS [nRow] ) * SEEDS [nRow];
+        lMixed += lMixed >>> 32;
+
+        long lTableIndex = ( lMixed >>> 8 ) & _nTableMask;
+        long lShift = ( lMixed & 15 ) << 2;
+
+        return ( lShift << 32 ) | lTableIndex;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.service;
+
+import java.util.function.BiConsumer;
+
+/**
+ * 
+ * Transport of the cache invalidations between the nodes of a cluster : an invalidation published by a node is delivered to the handler of every
+ * other node. The implementation is the bean broadcastproxy.cacheInvalidationBus, which can be replaced by a message broker for instance.
+ *
+ */
+public interface ICacheInvalidationBus
+{
+    /**
+     * Publish that the cached subscriptions of a user to an account have changed
+     * 
+     * @param strUserId
+     *            the user id
+     * @param strAccountId
+     *            the account id
+     */
+    void publish( String strUserId, String strAccountId );
+
+    /**
+     * Set the handler of the invalidations published by the other nodes
+     * 
+     * @param handler
+     *            the handler, called with the user id and the account id
+     */
+    void setHandler( BiConsumer<String, String> handler );
+
+    /**
+     * Receive the pending invalidations : called periodically by the cache invalidation daemon, the transports pushing the invalidations have nothing to do
+     */
+    default void poll( )
+    {
+    }
+}
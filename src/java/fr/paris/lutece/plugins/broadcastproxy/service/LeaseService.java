@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.service;
+
+import java.net.InetAddress;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+
+import fr.paris.lutece.plugins.broadcastproxy.business.LeaseHome;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * 
+ * Database leases shared by the nodes of a cluster : the work protected by a lease (calling the provider, writing the subscription links) is done
+ * by its owner only, the other nodes read the results from the database
+ *
+ */
+public final class LeaseService
+{
+    private static final String PROPERTY_ENABLED = "broadcastproxy.lease.enabled";
+    private static final String PROPERTY_NODE_ID = "broadcastproxy.lease.nodeId";
+    private static final String PROPERTY_DURATION = "broadcastproxy.lease.duration";
+    private static final String PROPERTY_MAX_ACCOUNTS_PER_NODE = "broadcastproxy.lease.maxAccountsPerNode";
+    private static final String PROPERTY_DAEMON_INTERVAL = "daemon.broadcastDaemon.interval";
+    private static final long DEFAULT_DAEMON_INTERVAL = 3600;
+    private static final String LEASE_CATALOG_PREFIX = "broadcastproxy.catalog.";
+
+    private static final LeaseService _singleton = new LeaseService( );
+
+    private final boolean _bEnabled;
+    private final String _strNodeId;
+    private final Map<String, Long> _mapHeldLeases = new ConcurrentHashMap<>( );
+
+    /**
+     * Private constructor
+     */
+    private LeaseService( )
+    {
+        _bEnabled = AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, true );
+
+        String strNodeId = AppPropertiesService.getProperty( PROPERTY_NODE_ID );
+        if ( StringUtils.isEmpty( strNodeId ) )
+        {
+            // Unique even for webapps sharing a host or a host name : the leases of a stopped node are released, those of a crashed node expire
+            strNodeId = getHostName( ) + ":" + UUID.randomUUID( ).toString( );
+        }
+        _strNodeId = strNodeId;
+        AppLogService.info( "Broadcastproxy node id : " + _strNodeId );
+    }
+
+    /**
+     * Get instance of LeaseService
+     * 
+     * @return instance of LeaseService
+     */
+    public static LeaseService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * Returns the name of the lease protecting the catalog of an account
+     * 
+     * @param strAccountId
+     *            the account id
+     * @return the lease name
+     */
+    public static String getCatalogLeaseName( String strAccountId )
+    {
+        return LEASE_CATALOG_PREFIX + strAccountId;
+    }
+
+    /**
+     * Returns the id of this node
+     * 
+     * @return the node id
+     */
+    public String getNodeId( )
+    {
+        return _strNodeId;
+    }
+
+    /**
+     * Try to acquire or renew a lease
+     * 
+     * @param strName
+     *            the lease name
+     * @return true if this node holds the lease
+     */
+    public boolean tryAcquire( String strName )
+    {
+        if ( !_bEnabled )
+        {
+            return true;
+        }
+
+        int nMaxLeases = AppPropertiesService.getPropertyInt( PROPERTY_MAX_ACCOUNTS_PER_NODE, 0 );
+        if ( nMaxLeases > 0 && !isOwner( strName ) && getHeldLeasesCount( ) >= nMaxLeases )
+        {
+            // Leave this lease to another node
+            return false;
+        }
+
+        long lExpiration = System.currentTimeMillis( ) + TimeUnit.SECONDS.toMillis( getDuration( ) );
+
+        try
+        {
+            if ( LeaseHome.acquire( strName, _strNodeId, new Timestamp( lExpiration ) ) )
+            {
+                _mapHeldLeases.put( strName, lExpiration );
+                return true;
+            }
+        }
+        catch( Exception e )
+        {
+            AppLogService.error( "Error occured while acquiring the lease " + strName + " : " + e.getMessage( ), e );
+        }
+
+        _mapHeldLeases.remove( strName );
+
+        return false;
+    }
+
+    /**
+     * Release all the leases held by this node, so that the other nodes can take them over without waiting for their expiration
+     */
+    public void releaseAll( )
+    {
+        for ( String strName : _mapHeldLeases.keySet( ) )
+        {
+            _mapHeldLeases.remove( strName );
+
+            try
+            {
+                LeaseHome.release( strName, _strNodeId );
+            }
+            catch( Exception e )
+            {
+                AppLogService.error( "Error occured while releasing the lease " + strName + " : " + e.getMessage( ), e );
+            }
+        }
+    }
+
+    /**
+     * Tells if this node holds a lease
+     * 
+     * @param strName
+     *            the lease name
+     * @return true if this node has acquired the lease and it has not expired
+     */
+    public boolean isOwner( String strName )
+    {
+        if ( !_bEnabled )
+        {
+            return true;
+        }
+
+        Long lExpiration = _mapHeldLeases.get( strName );
+
+        return lExpiration != null && lExpiration > System.currentTimeMillis( );
+    }
+
+    /**
+     * Count the leases held by this node
+     * 
+     * @return the number of leases
+     */
+    private int getHeldLeasesCount( )
+    {
+        long lNow = System.currentTimeMillis( );
+        int nCount = 0;
+        for ( Long lExpiration : _mapHeldLeases.values( ) )
+        {
+            if ( lExpiration > lNow )
+            {
+                nCount++;
+            }
+        }
+
+        return nCount;
+    }
+
+    /**
+     * Get the duration of a lease : by default one and a half daemon interval, so that a lease renewed at each run of the daemon does not expire
+     * while the lease of a node which has stopped running is taken over at the next run of another node
+     * 
+     * @return the duration in seconds
+     */
+    private static long getDuration( )
+    {
+        long lDuration = AppPropertiesService.getPropertyLong( PROPERTY_DURATION, 0 );
+        if ( lDuration <= 0 )
+        {
+            lDuration = AppPropertiesService.getPropertyLong( PROPERTY_DAEMON_INTERVAL, DEFAULT_DAEMON_INTERVAL ) * 3 / 2;
+        }
+
+        return lDuration;
+    }
+
+    /**
+     * Get the host name of this node
+     * 
+     * @return the host name, "unknown" if it can't be resolved
+     */
+    private static String getHostName( )
+    {
+        try
+        {
+            return InetAddress.getLocalHost( ).getHostName( );
+        }
+        catch( Exception e )
+        {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import fr.paris.lutece.plugins.broadcastproxy.business.CatalogItem;
+import fr.paris.lutece.plugins.broadcastproxy.business.SubscriptionLink;
+import fr.paris.lutece.plugins.broadcastproxy.business.SubscriptionLinkHome;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * 
+ * Synchronize the subscription links with the catalog of the default account :
+ * <ul>
+ * <li>a link is created for each enabled subscription having an active interest with the same name</li>
+ * <li>the ids owned by the provider (interest id, group id) of the existing links are updated</li>
+ * <li>a link is disabled when its subscription or its interest is disabled or deleted</li>
+ * </ul>
+ * The fields managed by the administrators (label, group, description, pictogram, frequency) are never modified and a disabled link is never enabled
+ * again. No link is disabled when the catalog is empty or when too many links would be disabled at once, which is most likely a partial catalog.
+ *
+ */
+public final class SubscriptionLinkSynchronizer
+{
+    // Properties
+    private static final String PROPERTY_MAX_DISABLED_PERCENT = "broadcastproxy.catalog.sync.maxDisabledPercent";
+
+    /**
+     * Private constructor
+     */
+    private SubscriptionLinkSynchronizer( )
+    {
+    }
+
+    /**
+     * Synchronize the subscription links with a catalog : the existing links are loaded with a single query and the changes are applied in a single
+     * transaction
+     * 
+     * @param listItems
+     *            all the items of the catalog
+     */
+    public static synchronized void synchronize( Collection<CatalogItem> listItems )
+    {
+        Map<Integer, CatalogItem> mapSubscriptions = new HashMap<>( );
+        Map<Integer, CatalogItem> mapInterests = new HashMap<>( );
+        Map<String, CatalogItem> mapActiveInterestsByName = new HashMap<>( );
+
+        for ( CatalogItem item : listItems )
+        {
+            if ( CatalogItem.TYPE_SUBSCRIPTION.equals( item.getType( ) ) )
+            {
+                mapSubscriptions.put( item.getId( ), item );
+            }
+            else
+            {
+                mapInterests.put( item.getId( ), item );
+                if ( item.isEnabled( ) )
+                {
+                    mapActiveInterestsByName.putIfAbsent( item.getName( ), item );
+                }
+            }
+        }
+
+        Map<Integer, SubscriptionLink> mapLinks = new HashMap<>( );
+        List<SubscriptionLink> listUpdate = new ArrayList<>( );
+        List<SubscriptionLink> listObsolete = new ArrayList<>( );
+        int nEnabled = 0;
+
+        for ( SubscriptionLink link : SubscriptionLinkHome.getSubscriptionLinksList( ) )
+        {
+            mapLinks.putIfAbsent( link.getSubscriptionId( ), link );
+
+            if ( link.isEnabled( ) )
+            {
+                nEnabled++;
+                if ( isObsolete( link, mapSubscriptions, mapInterests ) )
+                {
+                    listObsolete.add( link );
+                }
+            }
+        }
+
+        if ( canDisable( listObsolete.size( ), nEnabled, mapSubscriptions.isEmpty( ) || mapInterests.isEmpty( ) ) )
+        {
+            for ( SubscriptionLink link : listObsolete )
+            {
+                link.setEnabled( false );
+                listUpdate.add( link );
+            }
+        }
+
+        List<SubscriptionLink> listCreate = new ArrayList<>( );
+
+        for ( CatalogItem subscription : mapSubscriptions.values( ) )
+        {
+            CatalogItem interest = mapActiveInterestsByName.get( subscription.getName( ) );
+            if ( !subscription.isEnabled( ) || interest == null )
+            {
+                continue;
+            }
+
+            SubscriptionLink link = mapLinks.get( subscription.getId( ) );
+            if ( link == null )
+            {
+                listCreate.add( createSubscriptionLink( subscription, interest ) );
+            }
+            else
+                if ( link.isEnabled( ) && updateSubscriptionLink( link, interest ) )
+                {
+                    listUpdate.add( link );
+                }
+        }
+
+        SubscriptionLinkHome.synchronize( listCreate, listUpdate );
+
+        if ( !listCreate.isEmpty( ) || !listUpdate.isEmpty( ) )
+        {
+            AppLogService.info( "Broadcastproxy subscription links synchronized : " + listCreate.size( ) + " created, " + listUpdate.size( )
+                    + " updated or disabled" );
+        }
+    }
+
+    /**
+     * Tells if the obsolete links can be disabled : nothing is disabled when the catalog is empty or when the share of the enabled links to disable exceeds
+     * the configured maximum
+     * 
+     * @param nObsolete
+     *            the number of links to disable
+     * @param nEnabled
+     *            the number of enabled links
+     * @param bEmptyCatalog
+     *            true if the catalog has no subscription or no interest
+     * @return true if the links can be disabled
+     */
+    private static boolean canDisable( int nObsolete, int nEnabled, boolean bEmptyCatalog )
+    {
+        if ( nObsolete == 0 )
+        {
+            return false;
+        }
+
+        int nMaxPercent = AppPropertiesService.getPropertyInt( PROPERTY_MAX_DISABLED_PERCENT, 50 );
+
+        if ( bEmptyCatalog || nObsolete * 100L > (long) nMaxPercent * nEnabled )
+        {
+            AppLogService.error( "Broadcastproxy subscription links synchronization : " + nObsolete + " of the " + nEnabled
+                    + " enabled links would be disabled, the catalog looks incomplete and no link has been disabled" );
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Tells if the subscription or the interest of a link has been disabled or deleted. The links without subscription or interest id are not managed by
+     * the provider and are never obsolete.
+     * 
+     * @param link
+     *            the link
+     * @param mapSubscriptions
+     *            the subscriptions of the catalog
+     * @param mapInterests
+     *            the interests of the catalog
+     * @return true if the link must be disabled
+     */
+    private static boolean isObsolete( SubscriptionLink link, Map<Integer, CatalogItem> mapSubscriptions, Map<Integer, CatalogItem> mapInterests )
+    {
+        if ( link.getSubscriptionId( ) != 0 )
+        {
+            CatalogItem subscription = mapSubscriptions.get( link.getSubscriptionId( ) );
+            if ( subscription == null || !subscription.isEnabled( ) )
+            {
+                return true;
+            }
+        }
+
+        if ( link.getInterestId( ) != 0 )
+        {
+            CatalogItem interest = mapInterests.get( link.getInterestId( ) );
+            if ( interest == null || !interest.isEnabled( ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Update the ids of a link owned by the provider, the label and the group are only set when the link is created
+     * 
+     * @param link
+     *            the link
+     * @param interest
+     *            the interest of the link
+     * @return true if the link has been modified
+     */
+    private static boolean updateSubscriptionLink( SubscriptionLink link, CatalogItem interest )
+    {
+        if ( link.getInterestId( ) == interest.getId( ) && link.getGroupId( ) == interest.getGroupId( ) )
+        {
+            return false;
+        }
+
+        link.setInterestId( interest.getId( ) );
+        link.setGroupId( interest.getGroupId( ) );
+
+        return true;
+    }
+
+    /**
+     * Build the link between a subscription and an interest
+     * 
+     * @param subscription
+     *            the subscription
+     * @param interest
+     *            the interest
+     * @return the link
+     */
+    private static SubscriptionLink createSubscriptionLink( CatalogItem subscription, CatalogItem interest )
+    {
+        SubscriptionLink subLink = new SubscriptionLink( );
+
+        subLink.setSubscriptionId( subscription.getId( ) );
+        subLink.setInterestId( interest.getId( ) );
+        subLink.setGroupId( interest.getGroupId( ) );
+        subLink.setDescription( StringUtils.EMPTY );
+        subLink.setLabel( interest.getName( ) );
+        subLink.setPictogramme( StringUtils.EMPTY );
+        subLink.setFrequency( StringUtils.EMPTY );
+        subLink.setEnabled( true );
+        subLink.setGroup( interest.getGroupName( ) );
+
+        return subLink;
+    }
+}
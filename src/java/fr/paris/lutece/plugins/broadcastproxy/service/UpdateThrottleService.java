@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * 
+ * Throttling of the subscription updates of each user : a user may send at most maxRequests updates in any sliding window of window seconds, the
+ * others are rejected at once so that one user can't consume the shared capacity of the provider. The windows of the recent users are kept in a
+ * bounded cache.
+ *
+ */
+public final class UpdateThrottleService
+{
+    private static final String PROPERTY_ENABLED = "broadcastproxy.throttle.update.enabled";
+    private static final String PROPERTY_MAX_REQUESTS = "broadcastproxy.throttle.update.maxRequests";
+    private static final int DEFAULT_MAX_REQUESTS = 20;
+    private static final String PROPERTY_WINDOW = "broadcastproxy.throttle.update.window";
+    private static final long DEFAULT_WINDOW = 60;
+    private static final String CACHE_WINDOWS = "throttleWindows";
+
+    private static final UpdateThrottleService _singleton = new UpdateThrottleService( );
+
+    private final boolean _bEnabled;
+    private final int _nMaxRequests;
+    private final long _lWindow;
+    private final BoundedCache<String, SlidingWindow> _windows;
+    private final LongAdder _throttled = new LongAdder( );
+
+    /**
+     * Private constructor
+     */
+    private UpdateThrottleService( )
+    {
+        _bEnabled = AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, true );
+        _nMaxRequests = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_MAX_REQUESTS, DEFAULT_MAX_REQUESTS ) );
+        _lWindow = TimeUnit.SECONDS.toMillis( Math.max( 1, AppPropertiesService.getPropertyLong( PROPERTY_WINDOW, DEFAULT_WINDOW ) ) );
+        // A window without request for its whole duration is no longer needed
+        _windows = BoundedCache.create( CACHE_WINDOWS, 10000, TimeUnit.MILLISECONDS.toSeconds( _lWindow ) );
+    }
+
+    /**
+     * Get instance of UpdateThrottleService
+     * 
+     * @return instance of UpdateThrottleService
+     */
+    public static UpdateThrottleService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * Record an update request of a user, if it is allowed
+     * 
+     * @param strUserId
+     *            the user id
+     * @return 0 if the request is allowed, otherwise the time in milliseconds before the user may send a new request
+     */
+    public long tryAcquire( String strUserId )
+    {
+        if ( !_bEnabled )
+        {
+            return 0;
+        }
+
+        String strKey = UserSubscriptionService.normalizeUserId( strUserId );
+        SlidingWindow window;
+        synchronized( _windows )
+        {
+            window = _windows.get( strKey );
+            if ( window == null )
+            {
+                window = new SlidingWindow( _nMaxRequests );
+            }
+            // Each request extends the life of the window
+            _windows.put( strKey, window );
+        }
+
+        long lWait = window.tryAcquire( System.currentTimeMillis( ), _lWindow );
+        if ( lWait > 0 )
+        {
+            _throttled.increment( );
+        }
+
+        return lWait;
+    }
+
+    /**
+     * Returns the number of rejected requests
+     * 
+     * @return the number of throttled requests
+     */
+    public long getThrottled( )
+    {
+        return _throttled.sum( );
+    }
+
+    /**
+     * Forget the counter of rejected requests
+     */
+    public void reset( )
+    {
+        _throttled.reset( );
+    }
+
+    /**
+     * The dates of the last allowed requests of a user, in a ring
+     */
+    private static final class SlidingWindow
+    {
+        private final long [ ] _arrTimes;
+        private int _nNext;
+
+        /**
+         * Constructor
+         * 
+         * @param nMaxRequests
+         *            the number of requests allowed in a window
+         */
+        SlidingWindow( int nMaxRequests )
+        {
+            _arrTimes = new long [ nMaxRequests];
+        }
+
+        /**
+         * Record a request if fewer than the maximum of requests have been allowed during the window
+         * 
+         * @param lNow
+         *            the date of the request
+         * @param lWindow
+         *            the duration of the window in milliseconds
+         * @return 0 if the request is allowed, otherwise the time in milliseconds before the oldest request leaves the window
+         */
+        synchronized long tryAcquire( long lNow, long lWindow )
+        {
+            // The next slot holds the oldest of the last allowed requests
+            long lOldest = _arrTimes [_nNext];
+            if ( lOldest != 0 && lNow - lOldest < lWindow )
+            {
+                return lWindow - ( lNow - lOldest );
+            }
+
+            _arrTimes [_nNext] = lNow;
+            _nNext = ( _nNext + 1 ) % _arrTimes.length;
+
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+
+import fr.paris.lutece.portal.business.event.EventRabbitListener;
+import fr.paris.lutece.portal.business.event.LuteceUserEvent;
+import fr.paris.lutece.portal.service.security.LuteceUser;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * 
+ * Prefetch the subscriptions of a user in the background as soon as the user has logged in, so that they are usually cached when MyDashboard is
+ * displayed. The prefetches are limited to a number per second, the logins beyond this rate are not prefetched.
+ *
+ */
+public class UserLoginPrefetchListener implements EventRabbitListener<LuteceUserEvent>
+{
+    private static final String NAME = "broadcastproxy.userLoginPrefetchListener";
+    private static final String KEY_USER_INFO_MAIL = "broadcastproxy.userInfoKeys.mail";
+    private static final String PROPERTY_MAX_PER_SECOND = "broadcastproxy.prefetch.maxPerSecond";
+    private static final int DEFAULT_MAX_PER_SECOND = 10;
+
+    private final double _dMaxPerSecond;
+    private double _dTokens;
+    private long _lLastRefill = System.nanoTime( );
+
+    /**
+     * Constructor
+     */
+    public UserLoginPrefetchListener( )
+    {
+        _dMaxPerSecond = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_MAX_PER_SECOND, DEFAULT_MAX_PER_SECOND ) );
+        _dTokens = _dMaxPerSecond;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName( )
+    {
+        return NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void processEvent( LuteceUserEvent event )
+    {
+        if ( event.getEventType( ) != LuteceUserEvent.EventType.LOGIN_SUCCESSFUL || event.getUser( ) == null )
+        {
+            return;
+        }
+
+        String strUserMail = getMail( event.getUser( ) );
+        if ( StringUtils.isEmpty( strUserMail ) || !tryAcquire( ) )
+        {
+            return;
+        }
+
+        try
+        {
+            UserSubscriptionService.getInstance( ).prefetch( strUserMail );
+        }
+        catch( RuntimeException e )
+        {
+            AppLogService.error( "Error occured while prefetching the subscriptions of a user : " + e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Take a token from the bucket, refilled at the maximum rate
+     * 
+     * @return true if a prefetch is allowed
+     */
+    private synchronized boolean tryAcquire( )
+    {
+        long lNow = System.nanoTime( );
+        _dTokens = Math.min( _dMaxPerSecond, _dTokens + ( lNow - _lLastRefill ) * _dMaxPerSecond / TimeUnit.SECONDS.toNanos( 1 ) );
+        _lLastRefill = lNow;
+
+        if ( _dTokens < 1 )
+        {
+            return false;
+        }
+
+        _dTokens--;
+        return true;
+    }
+
+    /**
+     * Returns the email of a user
+     * 
+     * @param user
+     *            the user
+     * @return the email, null if it is unknown
+     */
+    private static String getMail( LuteceUser user )
+    {
+        String strUserMail = user.getEmail( );
+        if ( StringUtils.isBlank( strUserMail ) )
+        {
+            String strMailUserInfoKey = AppPropertiesService.getProperty( KEY_USER_INFO_MAIL );
+            if ( !StringUtils.isBlank( strMailUserInfoKey ) )
+            {
+                strUserMail = user.getUserInfo( strMailUserInfoKey );
+            }
+        }
+
+        return strUserMail;
+    }
+}
@@ -0,0 +1,928 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.simple.JSONObject;
+
+import fr.paris.lutece.plugins.broadcastproxy.business.AccountSubscriptionState;
+import fr.paris.lutece.plugins.broadcastproxy.business.IAsyncBroadcastProvider;
+import fr.paris.lutece.plugins.broadcastproxy.business.UserSubscriptionState;
+import fr.paris.lutece.plugins.broadcastproxy.business.providers.dolist.DolistCatalog;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * 
+ * Subscriptions of the users : each account of a user is cached separately with its own times to live, and only the missing or expired accounts are
+ * loaded from the provider, once for concurrent requests. An account older than its soft time to live is served from the cache and refreshed in
+ * the background, only an account older than its hard time to live is reloaded synchronously. A confirmed update is written through the cache and
+ * invalidated on the other nodes. Each update or invalidation marks the load in progress for the user and account as stale, so that a load
+ * started before the update can't overwrite its result. The updates of a same user are applied one at a time, in their order of arrival. The emails are sent as is to the provider and
+ * normalized in the keys of the cache, the loads, the versions and the updates, so that the requests of a user share the same keys.
+ *
+ */
+public final class UserSubscriptionService
+{
+    private static final String JSON_KEY_ID = "id";
+    private static final String JSON_KEY_ACTIVE = "active";
+    private static final String PROPERTY_SOFT_TTL = "broadcastproxy.cache.userSubscriptions.softTtl";
+    private static final long DEFAULT_SOFT_TTL = 300;
+    private static final String PROPERTY_TTL = "broadcastproxy.cache.userSubscriptions.ttl";
+    private static final long DEFAULT_TTL = 3600;
+    private static final String PROPERTY_REFRESH_POOL_SIZE = "broadcastproxy.cache.userSubscriptions.refresh.poolSize";
+    private static final String PROPERTY_REFRESH_QUEUE_SIZE = "broadcastproxy.cache.userSubscriptions.refresh.queueSize";
+    private static final String THREAD_NAME_PREFIX = "broadcastproxy-refresh";
+    private static final String PROPERTY_LOAD_TIMEOUT = "broadcastproxy.cache.userSubscriptions.loadTimeout";
+    private static final long DEFAULT_LOAD_TIMEOUT = 30;
+    private static final int LOCK_STRIPES = 256;
+
+    private static final UserSubscriptionService _singleton = new UserSubscriptionService( );
+
+    // The locks are shared by the users and accounts of a same stripe
+    private final Object [ ] _locks = new Object [ LOCK_STRIPES];
+
+    // Loads in progress, by user and account : the flag is set when the user and account are updated or invalidated during the load
+    private final Map<String, AtomicBoolean> _mapLoadsStale = new ConcurrentHashMap<>( );
+
+    // The updates of a user are chained, in their order of arrival : each update starts when the last one is done, the tail of the chain is removed
+    // when the user has no pending update
+    private final Map<String, CompletableFuture<Void>> _updateTails = new ConcurrentHashMap<>( );
+
+    // Background refreshes of the stale entries, skipped when the pool is saturated
+    private final ThreadPoolExecutor _refreshExecutor;
+
+    /**
+     * Private constructor
+     */
+    private UserSubscriptionService( )
+    {
+        for ( int i = 0; i < LOCK_STRIPES; i++ )
+        {
+            _locks [i] = new Object( );
+        }
+
+        int nPoolSize = AppPropertiesService.getPropertyInt( PROPERTY_REFRESH_POOL_SIZE, 4 );
+        int nQueueSize = AppPropertiesService.getPropertyInt( PROPERTY_REFRESH_QUEUE_SIZE, 500 );
+        _refreshExecutor = new ThreadPoolExecutor( nPoolSize, nPoolSize, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>( nQueueSize ),
+                new BroadcastThreadFactory( THREAD_NAME_PREFIX ), new ThreadPoolExecutor.AbortPolicy( ) );
+        _refreshExecutor.allowCoreThreadTimeOut( true );
+    }
+
+    /**
+     * Get instance of UserSubscriptionService
+     * 
+     * @return instance of UserSubscriptionService
+     */
+    public static UserSubscriptionService getInstance( )
+    {
+        return _singleton;
+    }
+
+    /**
+     * Get the subscriptions of a user : the cached accounts are used, the others are requested at once
+     * 
+     * @param strUserId
+     *            the user id
+     * @return the subscriptions, null if the subscriptions of the default account could not be retrieved
+     */
+    public UserSubscriptionState getUserSubscriptionState( String strUserId )
+    {
+        List<CompletableFuture<AccountSubscriptionState>> listFutures = startLoads( strUserId );
+        List<AccountSubscriptionState> listStates = new ArrayList<>( );
+
+        long lDeadline = System.currentTimeMillis( ) + TimeUnit.SECONDS.toMillis( AppPropertiesService.getPropertyLong( PROPERTY_LOAD_TIMEOUT, DEFAULT_LOAD_TIMEOUT ) );
+        for ( CompletableFuture<AccountSubscriptionState> future : listFutures )
+        {
+            listStates.add( waitState( future, lDeadline ) );
+        }
+
+        if ( listStates.get( 0 ) == null )
+        {
+            return null;
+        }
+
+        return assemble( listStates );
+    }
+
+    /**
+     * Get the subscriptions of a user without blocking the caller : the cached accounts are used, the others are requested at once
+     * 
+     * @param strUserId
+     *            the user id
+     * @return a future completed when all the accounts are available, with null if the subscriptions of the default account could not be
+     *         retrieved
+     */
+    public CompletableFuture<UserSubscriptionState> getUserSubscriptionStateAsync( String strUserId )
+    {
+        List<CompletableFuture<AccountSubscriptionState>> listFutures = new ArrayList<>( );
+        for ( CompletableFuture<AccountSubscriptionState> future : startLoads( strUserId ) )
+        {
+            // A failing account does not prevent the others from being returned
+            listFutures.add( future.exceptionally( e -> null ) );
+        }
+
+        return CompletableFuture.allOf( listFutures.toArray( new CompletableFuture<?> [ listFutures.size( )] ) ).thenApply( v -> {
+            List<AccountSubscriptionState> listStates = new ArrayList<>( );
+            for ( CompletableFuture<AccountSubscriptionState> future : listFutures )
+            {
+                listStates.add( future.join( ) );
+            }
+
+            return listStates.get( 0 ) == null ? null : assemble( listStates );
+        } );
+    }
+
+    /**
+     * Tells if the subscriptions of a user can be served without calling the provider : every account is cached and not older than its time to live
+     * 
+     * @param strUserId
+     *            the user id
+     * @return true if all the accounts are cached
+     */
+    public boolean isCached( String strUserId )
+    {
+        for ( Map.Entry<String, String> account : getAccounts( ).entrySet( ) )
+        {
+            AccountSubscriptionState state = BroadcastCacheService.getInstance( ).getAccountSubscriptionState( strUserId, account.getValue( ) );
+            if ( state == null || isExpired( state, account.getKey( ), PROPERTY_TTL, DEFAULT_TTL ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the subscriptions of a user from the cache only, whatever their age : used when the provider can't be called. The accounts which are not
+     * cached are returned as not subscribed.
+     * 
+     * @param strUserId
+     *            the user id
+     * @return the cached subscriptions, null if the default account is not cached
+     */
+    public UserSubscriptionState getCachedUserSubscriptionState( String strUserId )
+    {
+        List<AccountSubscriptionState> listStates = new ArrayList<>( );
+        for ( String strAccountId : getAccounts( ).values( ) )
+        {
+            listStates.add( BroadcastCacheService.getInstance( ).getAccountSubscriptionState( strUserId, strAccountId ) );
+        }
+
+        return listStates.get( 0 ) == null ? null : assemble( listStates );
+    }
+
+    /**
+     * Get the subscriptions of a user to each account : from the cache if they are there, otherwise from a load shared by the concurrent requests
+     * 
+     * @param strUserId
+     *            the user id
+     * @return the subscriptions of each account, the default account first, then the arrondissements
+     */
+    private List<CompletableFuture<AccountSubscriptionState>> startLoads( String strUserId )
+    {
+        List<CompletableFuture<AccountSubscriptionState>> listFutures = new ArrayList<>( );
+
+        for ( Map.Entry<String, String> account : getAccounts( ).entrySet( ) )
+        {
+            AccountSubscriptionState state = BroadcastCacheService.getInstance( ).getAccountSubscriptionState( strUserId, account.getValue( ) );
+            CacheMetrics metrics = CacheMetricsService.getInstance( ).getMetrics( account.getValue( ) );
+            if ( state != null && !isExpired( state, account.getKey( ), PROPERTY_TTL, DEFAULT_TTL ) )
+            {
+                // A stale state is served at once and refreshed in the background
+                if ( isExpired( state, account.getKey( ), PROPERTY_SOFT_TTL, DEFAULT_SOFT_TTL ) )
+                {
+                    metrics.recordStaleHit( );
+                    refresh( strUserId, account.getValue( ) );
+                }
+                else
+                {
+                    metrics.recordHit( );
+                }
+                listFutures.add( CompletableFuture.completedFuture( state ) );
+            }
+            else
+            {
+                // Concurrent requests for the same user and account share the same load
+                metrics.recordMiss( );
+                String strAccountId = account.getValue( );
+                listFutures.add( BroadcastCacheService.getInstance( ).loadAccountSubscriptionState( strUserId, strAccountId,
+                        ( ) -> loadAccountSubscriptionState( strUserId, strAccountId ) ) );
+            }
+        }
+
+        return listFutures;
+    }
+
+    /**
+     * Load in the background the subscriptions of a user to the accounts which are not cached or stale, without waiting for them
+     * 
+     * @param strUserId
+     *            the user id
+     */
+    public void prefetch( String strUserId )
+    {
+        for ( Map.Entry<String, String> account : getAccounts( ).entrySet( ) )
+        {
+            AccountSubscriptionState state = BroadcastCacheService.getInstance( ).getAccountSubscriptionState( strUserId, account.getValue( ) );
+            if ( state == null || isExpired( state, account.getKey( ), PROPERTY_SOFT_TTL, DEFAULT_SOFT_TTL ) )
+            {
+                refresh( strUserId, account.getValue( ) );
+            }
+        }
+    }
+
+    /**
+     * Update a subscription of a user, the cached state of the account is updated once the provider has confirmed the update
+     * 
+     * @param strUserId
+     *            the user id
+     * @param strAccountName
+     *            the arrondissement name, empty or "default" for the default account
+     * @param strJsonSubscription
+     *            the update : {"id": "", "active": true, "account": ""}
+     * @param nSubscriptionId
+     *            the subscription id
+     * @param bActive
+     *            true to subscribe, false to unsubscribe
+     * @return true if the provider has confirmed the update
+     * @throws Exception
+     *             if an error occured
+     */
+    public boolean updateUserSubscription( String strUserId, String strAccountName, String strJsonSubscription, int nSubscriptionId, boolean bActive )
+            throws Exception
+    {
+        AccountService accountService = AccountService.getInstance( );
+        String strAccountId = accountService.getAccountId( strAccountName );
+        if ( StringUtils.isEmpty( strAccountId ) )
+        {
+            AppLogService.error( "Unknown account : " + strAccountName );
+            return false;
+        }
+
+        boolean bDefaultAccount = strAccountId.equals( accountService.getDefaultAccountId( ) );
+        CompletableFuture<Void> done = new CompletableFuture<>( );
+        try
+        {
+            enqueueUpdate( strUserId, done ).join( );
+            boolean bUpdated;
+            try
+            {
+                bUpdated = bDefaultAccount ? BroadcastService.getInstance( ).updateSubscribtions( strUserId, strJsonSubscription, strAccountId )
+                        : BroadcastService.getInstance( ).updateArrondissementSubscribtions( strUserId, strJsonSubscription, strAccountId );
+            }
+            catch( Exception e )
+            {
+                invalidate( strUserId, strAccountId );
+                throw e;
+            }
+
+            return applyUpdate( strUserId, strAccountId, bDefaultAccount, Collections.singletonMap( nSubscriptionId, bActive ), bUpdated );
+        }
+        finally
+        {
+            dequeueUpdate( strUserId, done );
+        }
+    }
+
+    /**
+     * Update several subscriptions of a user at once : the changes are grouped by account, so that each account is updated with a single provider
+     * call. The cached state of an account is updated once the provider has confirmed its update.
+     * 
+     * @param strUserId
+     *            the user id
+     * @param mapUpdates
+     *            the changes by account name (empty or "default" for the default account), each change maps a subscription id to true to subscribe
+     *            or false to unsubscribe
+     * @return true if the provider has confirmed the update of every account
+     */
+    public boolean updateUserSubscriptions( String strUserId, Map<String, Map<Integer, Boolean>> mapUpdates )
+    {
+        CompletableFuture<Void> done = new CompletableFuture<>( );
+        try
+        {
+            enqueueUpdate( strUserId, done ).join( );
+            return applyUpdates( strUserId, mapUpdates );
+        }
+        finally
+        {
+            dequeueUpdate( strUserId, done );
+        }
+    }
+
+    /**
+     * Send the changes of a batch update to the provider, account by account, and update the cache
+     * 
+     * @param strUserId
+     *            the user id
+     * @param mapUpdates
+     *            the changes by account name
+     * @return true if the provider has confirmed the update of every account
+     */
+    private boolean applyUpdates( String strUserId, Map<String, Map<Integer, Boolean>> mapUpdates )
+    {
+        AccountService accountService = AccountService.getInstance( );
+        boolean bAllUpdated = true;
+        for ( Map.Entry<String, Map<Integer, Boolean>> entry : mapUpdates.entrySet( ) )
+        {
+            Map<Integer, Boolean> mapChanges = entry.getValue( );
+            String strAccountId = accountService.getAccountId( entry.getKey( ) );
+            if ( StringUtils.isEmpty( strAccountId ) )
+            {
+                AppLogService.error( "Unknown account : " + entry.getKey( ) );
+                bAllUpdated = false;
+                continue;
+            }
+            if ( mapChanges.isEmpty( ) )
+            {
+                continue;
+            }
+
+            boolean bDefaultAccount = strAccountId.equals( accountService.getDefaultAccountId( ) );
+            boolean bUpdated;
+            try
+            {
+                if ( bDefaultAccount )
+                {
+                    bUpdated = BroadcastService.getInstance( ).updateSubscribtions( strUserId, mapChanges, strAccountId );
+                }
+                else
+                {
+                    // An arrondissement is subscribed or unsubscribed as a whole, only the last change matters
+                    Map.Entry<Integer, Boolean> last = null;
+                    for ( Map.Entry<Integer, Boolean> change : mapChanges.entrySet( ) )
+                    {
+                        last = change;
+                    }
+                    mapChanges = Collections.singletonMap( last.getKey( ), last.getValue( ) );
+                    bUpdated = BroadcastService.getInstance( ).updateArrondissementSubscribtions( strUserId, toJson( last.getKey( ), last.getValue( ) ),
+                            strAccountId );
+                }
+            }
+            catch( Exception e )
+            {
+                AppLogService.error( "An error occured while updating subscriptions : " + e.getMessage( ), e );
+                bUpdated = false;
+            }
+
+            bAllUpdated &= applyUpdate( strUserId, strAccountId, bDefaultAccount, mapChanges, bUpdated );
+        }
+
+        return bAllUpdated;
+    }
+
+    /**
+     * Update a subscription of a user without blocking the caller, the cached state of the account is updated once the provider has confirmed the
+     * update
+     * 
+     * @param strUserId
+     *            the user id
+     * @param strAccountName
+     *            the arrondissement name, empty or "default" for the default account
+     * @param strJsonSubscription
+     *            the update : {"id": "", "active": true, "account": ""}
+     * @param nSubscriptionId
+     *            the subscription id
+     * @param bActive
+     *            true to subscribe, false to unsubscribe
+     * @return a future completed with true if the provider has confirmed the update, false if it has failed
+     */
+    public CompletableFuture<Boolean> updateUserSubscriptionAsync( String strUserId, String strAccountName, String strJsonSubscription,
+            int nSubscriptionId, boolean bActive )
+    {
+        AccountService accountService = AccountService.getInstance( );
+        String strAccountId = accountService.getAccountId( strAccountName );
+        if ( StringUtils.isEmpty( strAccountId ) )
+        {
+            AppLogService.error( "Unknown account : " + strAccountName );
+            return CompletableFuture.completedFuture( Boolean.FALSE );
+        }
+
+        boolean bDefaultAccount = strAccountId.equals( accountService.getDefaultAccountId( ) );
+        IAsyncBroadcastProvider provider = BroadcastService.getInstance( ).getAsyncProvider( );
+
+        // The provider is called when the previous update of the user is done, without blocking any thread, and the next update starts once the
+        // result of this one is in the cache
+        CompletableFuture<Void> done = new CompletableFuture<>( );
+        CompletableFuture<Boolean> future = enqueueUpdate( strUserId, done ).thenCompose( v -> bDefaultAccount
+                ? provider.updateSubscribtionsAsync( strUserId, strJsonSubscription, strAccountId )
+                : provider.updateArrondissementSubscribtionsAsync( strUserId, strJsonSubscription, strAccountId ) );
+
+        return future.handle( ( bUpdated, e ) -> {
+            try
+            {
+                if ( e != null )
+                {
+                    AppLogService.error( "An error occured while updating subscriptions : " + e.getMessage( ), e );
+                    invalidate( strUserId, strAccountId );
+                    return Boolean.FALSE;
+                }
+
+                return applyUpdate( strUserId, strAccountId, bDefaultAccount, Collections.singletonMap( nSubscriptionId, bActive ),
+                        Boolean.TRUE.equals( bUpdated ) );
+            }
+            finally
+            {
+                dequeueUpdate( strUserId, done );
+            }
+        } );
+    }
+
+    /**
+     * Apply the result of an update to the cache : the state is written through if the provider has confirmed the update, removed otherwise
+     * 
+     * @param strUserId
+     *            the user id
+     * @param strAccountId
+     *            the account id
+     * @param bDefaultAccount
+     *            true for the default account
+     * @param mapChanges
+     *            the subscription ids, with true to subscribe and false to unsubscribe
+     * @param bUpdated
+     *            true if the provider has confirmed the update
+     * @return bUpdated
+     */
+    private boolean applyUpdate( String strUserId, String strAccountId, boolean bDefaultAccount, Map<Integer, Boolean> mapChanges, boolean bUpdated )
+    {
+        if ( !bUpdated )
+        {
+            // The update may have been partially applied
+            invalidate( strUserId, strAccountId );
+            return false;
+        }
+
+        synchronized( _locks [getStripe( strUserId, strAccountId )] )
+        {
+            markLoadStale( strUserId, strAccountId );
+
+            AccountSubscriptionState state = BroadcastCacheService.getInstance( ).getAccountSubscriptionState( strUserId, strAccountId );
+            if ( state != null )
+            {
+                for ( Map.Entry<Integer, Boolean> change : mapChanges.entrySet( ) )
+                {
+                    // An arrondissement update subscribes or unsubscribes all the subscriptions of the account
+                    state = bDefaultAccount ? state.withSubscription( change.getKey( ), change.getValue( ) )
+                            : state.withSubscriptions( change.getValue( ) ? getCatalogSubscriptionIds( strAccountId ) : new int [ 0] );
+                }
+                BroadcastCacheService.getInstance( ).putAccountSubscriptionState( strUserId, strAccountId, state );
+            }
+        }
+        CacheInvalidationService.getInstance( ).publish( strUserId, strAccountId );
+
+        return true;
+    }
+
+    /**
+     * Remove the cached state of a user for all the accounts
+     * 
+     * @param strUserId
+     *            the user id
+     */
+    public void invalidate( String strUserId )
+    {
+        for ( String strAccountId : AccountService.getInstance( ).getAccountIds( ) )
+        {
+            invalidate( strUserId, strAccountId );
+        }
+    }
+
+    /**
+     * Remove the cached state of a user for an account, on this node and on the other nodes
+     * 
+     * @param strUserId
+     *            the user id
+     * @param strAccountId
+     *            the account id
+     */
+    public void invalidate( String strUserId, String strAccountId )
+    {
+        invalidateLocally( strUserId, strAccountId );
+        CacheInvalidationService.getInstance( ).publish( strUserId, strAccountId );
+    }
+
+    /**
+     * Remove the cached state of a user for an account on this node only : handler of the invalidations published by the other nodes
+     * 
+     * @param strUserId
+     *            the user id
+     * @param strAccountId
+     *            the account id
+     */
+    public void invalidateLocally( String strUserId, String strAccountId )
+    {
+        synchronized( _locks [getStripe( strUserId, strAccountId )] )
+        {
+            markLoadStale( strUserId, strAccountId );
+            BroadcastCacheService.getInstance( ).removeAccountSubscriptionState( strUserId, strAccountId );
+        }
+    }
+
+    /**
+     * Register a load of the subscriptions of a user to an account, before the provider is called
+     * 
+     * @param strUserId
+     *            the user id
+     * @param strAccountId
+     *            the account id
+     * @return the flag set if the user and account are updated or invalidated during the load
+     */
+    private AtomicBoolean startLoad( String strUserId, String strAccountId )
+    {
+        AtomicBoolean bStale = new AtomicBoolean( );
+        _mapLoadsStale.put( getLoadKey( strUserId, strAccountId ), bStale );
+
+        return bStale;
+    }
+
+    /**
+     * Mark the load in progress of the subscriptions of a user to an account, if any, as stale : called with the lock of the stripe
+     * 
+     * @param strUserId
+     *            the user id
+     * @param strAccountId
+     *            the account id
+     */
+    private void markLoadStale( String strUserId, String strAccountId )
+    {
+        AtomicBoolean bStale = _mapLoadsStale.get( getLoadKey( strUserId, strAccountId ) );
+        if ( bStale != null )
+        {
+            bStale.set( true );
+        }
+    }
+
+    /**
+     * Load the subscriptions of a user to an account from the provider and cache them
+     * 
+     * @param strUserId
+     *            the user id
+     * @param strAccountId
+     *            the account id
+     * @return a future completed with the subscriptions, or null if they could not be retrieved
+     */
+    private CompletableFuture<AccountSubscriptionState> loadAccountSubscriptionState( String strUserId, String strAccountId )
+    {
+        AtomicBoolean bStale = startLoad( strUserId, strAccountId );
+        long lStartTime = System.nanoTime( );
+        CompletableFuture<List<JSONObject>> future;
+        try
+        {
+            future = BroadcastService.getInstance( ).getUserSubscriptionIdsAsync( strUserId, strAccountId );
+        }
+        catch( RuntimeException e )
+        {
+            future = new CompletableFuture<>( );
+            future.completeExceptionally( e );
+        }
+
+        return future.handle( ( listIds, e ) -> cacheAccountSubscriptionState( strUserId, strAccountId, bStale, lStartTime, listIds, e ) );
+    }
+
+    /**
+     * Refresh the subscriptions of a user to an account in the background, unless a load is already in progress or the refresh pool is saturated
+     * 
+     * @param strUserId
+     *            the user id
+     * @param strAccountId
+     *            the account id
+     */
+    private void refresh( String strUserId, String strAccountId )
+    {
+        BroadcastCacheService.getInstance( ).loadAccountSubscriptionState( strUserId, strAccountId, ( ) -> {
+            AtomicBoolean bStale = startLoad( strUserId, strAccountId );
+            long lStartTime = System.nanoTime( );
+            try
+            {
+                return CompletableFuture.supplyAsync( ( ) -> BroadcastService.getInstance( ).getUserSubscriptionIds( strUserId, strAccountId ),
+                        _refreshExecutor ).handle( ( listIds, e ) -> cacheAccountSubscriptionState( strUserId, strAccountId, bStale, lStartTime, listIds, e ) );
+            }
+            catch( RuntimeException e )
+            {
+                // Saturated pool : the refresh is skipped
+                _mapLoadsStale.remove( getLoadKey( strUserId, strAccountId ), bStale );
+                throw e;
+            }
+        } );
+    }
+
+    /**
+     * Cache the subscriptions of a user to an account returned by the provider
+     * 
+     * @param strUserId
+     *            the user id
+     * @param strAccountId
+     *            the account id
+     * @param bStale
+     *            the flag of the load, set if the user and account have been updated or invalidated during the load
+     * @param lStartTime
+     *            the start of the load, from System.nanoTime
+     * @param listIds
+     *            the ids returned by the provider
+     * @param e
+     *            the error of the load, if any
+     * @return the subscriptions, the cached ones if the user has been updated during the load, null if they could not be retrieved
+     */
+    private AccountSubscriptionState cacheAccountSubscriptionState( String strUserId, String strAccountId, AtomicBoolean bStale, long lStartTime,
+            List<JSONObject> listIds, Throwable e )
+    {
+        CacheMetricsService.getInstance( ).getMetrics( strAccountId ).recordLoad( lStartTime, e == null && listIds != null );
+
+        if ( e != null || listIds == null )
+        {
+            _mapLoadsStale.remove( getLoadKey( strUserId, strAccountId ), bStale );
+
+            // A failing account is not cached and does not prevent the others from being cached
+            AppLogService.error( "Error occured while getting the subscriptions of account " + strAccountId
+                    + ( e != null ? " : " + e.getMessage( ) : StringUtils.EMPTY ) );
+            return null;
+        }
+
+        AccountSubscriptionState state = new AccountSubscriptionState( toIds( listIds ), System.currentTimeMillis( ) );
+
+        synchronized( _locks [getStripe( strUserId, strAccountId )] )
+        {
+            _mapLoadsStale.remove( getLoadKey( strUserId, strAccountId ), bStale );
+
+            if ( !bStale.get( ) )
+            {
+                BroadcastCacheService.getInstance( ).putAccountSubscriptionState( strUserId, strAccountId, state );
+                return state;
+            }
+
+            // The user has been updated during the load : the loaded state may miss the update, the state written through by the update is
+            // returned instead when there is one
+            AccountSubscriptionState cachedState = BroadcastCacheService.getInstance( ).getAccountSubscriptionState( strUserId, strAccountId );
+
+            return ( cachedState != null ) ? cachedState : state;
+        }
+    }
+
+    /**
+     * Wait for a load, the load goes on and is cached if it completes after the deadline
+     * 
+     * @param future
+     *            the load
+     * @param lDeadline
+     *            the time after which the load is no longer waited for
+     * @return the subscriptions, null if they could not be retrieved in time
+     */
+    private static AccountSubscriptionState waitState( CompletableFuture<AccountSubscriptionState> future, long lDeadline )
+    {
+        try
+        {
+            return future.get( Math.max( 0, lDeadline - System.currentTimeMillis( ) ), TimeUnit.MILLISECONDS );
+        }
+        catch( TimeoutException e )
+        {
+            AppLogService.error( "The subscriptions of a user have not been retrieved in time" );
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+        }
+        catch( ExecutionException e )
+        {
+            AppLogService.error( "Error occured while getting the subscriptions of a user : " + e.getMessage( ), e );
+        }
+
+        return null;
+    }
+
+    /**
+     * Assemble the subscriptions of all the accounts
+     * 
+     * @param listStates
+     *            the state of each account : the default account first, then the arrondissements. The missing accounts are null.
+     * @return the subscriptions of the user
+     */
+    private static UserSubscriptionState assemble( List<AccountSubscriptionState> listStates )
+    {
+        long [ ] arrFetchTimes = new long [ listStates.size( )];
+        long lArrondissementMask = 0;
+
+        for ( int i = 0; i < listStates.size( ); i++ )
+        {
+            AccountSubscriptionState state = listStates.get( i );
+            if ( state != null )
+            {
+                arrFetchTimes [i] = state.getFetchTime( );
+
+                if ( i > 0 && i <= Long.SIZE && state.isSubscribed( ) )
+                {
+                    lArrondissementMask |= 1L << ( i - 1 );
+                }
+            }
+        }
+
+        return new UserSubscriptionState( listStates.get( 0 ).getSubscriptionIds( ), lArrondissementMask, arrFetchTimes );
+    }
+
+    /**
+     * Get the accounts by name : the default account first, then the arrondissements
+     * 
+     * @return the account ids by name
+     */
+    private static Map<String, String> getAccounts( )
+    {
+        Map<String, String> mapAccounts = new LinkedHashMap<>( );
+        mapAccounts.put( AccountService.ACCOUNT_DEFAULT, AccountService.getInstance( ).getDefaultAccountId( ) );
+        mapAccounts.putAll( AccountService.getInstance( ).getArrondissementAccounts( ) );
+
+        return mapAccounts;
+    }
+
+    /**
+     * Tells if the cached state of an account is older than a time to live
+     * 
+     * @param state
+     *            the state
+     * @param strAccountName
+     *            the account name, the time to live can be set for each account with the property [property].[name]
+     * @param strProperty
+     *            the property of the time to live
+     * @param lDefaultTtl
+     *            the default time to live in seconds
+     * @return true if the state is older
+     */
+    private static boolean isExpired( AccountSubscriptionState state, String strAccountName, String strProperty, long lDefaultTtl )
+    {
+        long lTtl = AppPropertiesService.getPropertyLong( strProperty + "." + strAccountName, AppPropertiesService.getPropertyLong( strProperty, lDefaultTtl ) );
+
+        return System.currentTimeMillis( ) - state.getFetchTime( ) > TimeUnit.SECONDS.toMillis( lTtl );
+    }
+
+    /**
+     * Get the ids of the enabled subscriptions of an account
+     * 
+     * @param strAccountId
+     *            the account id
+     * @return the ids
+     */
+    private static int [ ] getCatalogSubscriptionIds( String strAccountId )
+    {
+        return new DolistCatalog( CatalogService.getInstance( ).getCatalog( strAccountId ) ).getSubscriptionsMapIdName( ).keySet( ).stream( )
+                .mapToInt( Integer::parseInt ).toArray( );
+    }
+
+    /**
+     * Normalize the email of a user, used as the key of the user by the cache, the loads, the versions, the updates and the throttle. The provider
+     * gets the email as is.
+     * 
+     * @param strUserId
+     *            the user email
+     * @return the trimmed lower case email
+     */
+    public static String normalizeUserId( String strUserId )
+    {
+        return StringUtils.lowerCase( StringUtils.trim( strUserId ), Locale.ROOT );
+    }
+
+    /**
+     * Append an update to the chain of the updates of a user
+     * 
+     * @param strUserId
+     *            the user id
+     * @param done
+     *            the future completed when the update is done
+     * @return the future completed when the previous update of the user is done
+     */
+    private CompletableFuture<Void> enqueueUpdate( String strUserId, CompletableFuture<Void> done )
+    {
+        CompletableFuture<Void> previous = _updateTails.put( normalizeUserId( strUserId ), done );
+
+        return ( previous != null ) ? previous : CompletableFuture.completedFuture( null );
+    }
+
+    /**
+     * Mark an update as done : the next update of the user can start, and the chain is removed if no other update has been appended
+     * 
+     * @param strUserId
+     *            the user id
+     * @param done
+     *            the future of the update
+     */
+    private void dequeueUpdate( String strUserId, CompletableFuture<Void> done )
+    {
+        _updateTails.remove( normalizeUserId( strUserId ), done );
+        done.complete( null );
+    }
+
+    /**
+     * Get the stripe of a user and an account
+     * 
+     * @param strUserId
+     *            the user id
+     * @param strAccountId
+     *            the account id
+     * @return the stripe index
+     */
+    private static int getStripe( String strUserId, String strAccountId )
+    {
+        return ( getLoadKey( strUserId, strAccountId ).hashCode( ) & Integer.MAX_VALUE ) % LOCK_STRIPES;
+    }
+
+    /**
+     * Get the key of a user and an account
+     * 
+     * @param strUserId
+     *            the user id
+     * @param strAccountId
+     *            the account id
+     * @return the normalized email and the account id
+     */
+    private static String getLoadKey( String strUserId, String strAccountId )
+    {
+        return normalizeUserId( strUserId ) + ":" + strAccountId;
+    }
+
+    /**
+     * Build the JSON of a single update, as sent by the front office
+     * 
+     * @param nSubscriptionId
+     *            the subscription id
+     * @param bActive
+     *            true to subscribe, false to unsubscribe
+     * @return the JSON : {"id": 1, "active": true}
+     */
+    @SuppressWarnings( "unchecked" )
+    private static String toJson( int nSubscriptionId, boolean bActive )
+    {
+        JSONObject json = new JSONObject( );
+        json.put( JSON_KEY_ID, nSubscriptionId );
+        json.put( JSON_KEY_ACTIVE, bActive );
+
+        return json.toJSONString( );
+    }
+
+    /**
+     * Get the ids returned by the provider
+     * 
+     * @param listIds
+     *            the ids as JSON objects
+     * @return the ids
+     */
+    private static int [ ] toIds( List<JSONObject> listIds )
+    {
+        int [ ] arrIds = new int [ listIds.size( )];
+        int nCount = 0;
+        for ( JSONObject json : listIds )
+        {
+            Object id = json.get( JSON_KEY_ID );
+            if ( id instanceof Number )
+            {
+                arrIds [nCount++] = ( (Number) id ).intValue( );
+            }
+        }
+
+        return nCount == arrIds.length ? arrIds : Arrays.copyOf( arrIds, nCount );
+    }
+}
@@ -0,0 +1,480 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import fr.paris.lutece.plugins.broadcastproxy.business.AccountSubscriptionState;
+
+/**
+ * 
+ * Bounded store of the subscriptions of the users to the accounts, in a fixed memory allocated once, on the heap or off the heap.
+ * <ul>
+ * <li>the key is the 128 bits MD5 hash of the normalized email and the account id, the emails are not kept</li>
+ * <li>each entry is a fixed size slot of primitives : the key, the fetch time, the number of ids and the ids. A state with more ids than a slot
+ * can hold is not stored, it is left to the plugin cache</li>
+ * <li>a key can only be stored in the slots of one set, when the set is full the expired slot or else the least frequently used slot is replaced,
+ * only if the new key is used more frequently (TinyLFU admission)</li>
+ * </ul>
+ *
+ */
+public final class UserSubscriptionStore
+{
+    private static final int WAYS = 8;
+    private static final int LOCK_STRIPES = 1024;
+    private static final int OFFSET_KEY_HIGH = 0;
+    private static final int OFFSET_KEY_LOW = 8;
+    private static final int OFFSET_FETCH_TIME = 16;
+    private static final int OFFSET_COUNT = 24;
+    private static final int OFFSET_IDS = 28;
+
+    private final ByteBuffer _buffer;
+    private final int _nSets;
+    private final int _nSlotSize;
+    private final int _nMaxIds;
+    private final Object [ ] _locks;
+    private final FrequencySketch _sketch;
+    private final AtomicInteger _nSize = new AtomicInteger( );
+    private final LongAdder _evictionsExpired = new LongAdder( );
+    private final LongAdder _evictionsCapacity = new LongAdder( );
+    private final LongAdder _rejections = new LongAdder( );
+    private final LongAdder _oversized = new LongAdder( );
+
+    /**
+     * Constructor
+     * 
+     * @param nMaxEntries
+     *            the maximum number of entries
+     * @param nMaxIds
+     *            the maximum number of subscription ids of an entry
+     * @param bOffHeap
+     *            true to allocate the memory off the heap
+     */
+    public UserSubscriptionStore( int nMaxEntries, int nMaxIds, boolean bOffHeap )
+    {
+        _nMaxIds = Math.max( 1, nMaxIds );
+        _nSlotSize = OFFSET_IDS + 4 * _nMaxIds;
+        _nSets = (int) Math.max( 1, Math.min( ( (long) nMaxEntries + WAYS - 1 ) / WAYS, Integer.MAX_VALUE / ( (long) WAYS * _nSlotSize ) ) );
+
+        int nCapacity = _nSets * WAYS * _nSlotSize;
+        _buffer = bOffHeap ? ByteBuffer.allocateDirect( nCapacity ) : ByteBuffer.allocate( nCapacity );
+
+        _locks = new Object [ Math.min( _nSets, LOCK_STRIPES )];
+        for ( int i = 0; i < _locks.length; i++ )
+        {
+            _locks [i] = new Object( );
+        }
+
+        _sketch = new FrequencySketch( _nSets * WAYS );
+    }
+
+    /**
+     * Get the subscriptions of a user to an account
+     * 
+     * @param strUserId
+     *            the user email
+     * @param strAccountId
+     *            the account id
+     * @return the subscriptions, null if they are not stored
+     */
+    public AccountSubscriptionState get( String strUserId, String strAccountId )
+    {
+        long [ ] arrKey = getKey( strUserId, strAccountId );
+        int nSet = getSet( arrKey );
+        _sketch.increment( arrKey [1] );
+
+        synchronized( getLock( nSet ) )
+        {
+            int nSlot = findSlot( nSet, arrKey );
+            if ( nSlot < 0 )
+            {
+                return null;
+            }
+
+            int nCount = _buffer.getInt( nSlot + OFFSET_COUNT );
+            int [ ] arrIds = new int [ nCount];
+            for ( int i = 0; i < nCount; i++ )
+            {
+                arrIds [i] = _buffer.getInt( nSlot + OFFSET_IDS + 4 * i );
+            }
+
+            return new AccountSubscriptionState( arrIds, _buffer.getLong( nSlot + OFFSET_FETCH_TIME ) );
+        }
+    }
+
+    /**
+     * Store the subscriptions of a user to an account : an existing entry is always replaced, a new entry may be rejected if its set is full of
+     * entries used more frequently
+     * 
+     * @param strUserId
+     *            the user email
+     * @param strAccountId
+     *            the account id
+     * @param state
+     *            the subscriptions
+     * @param lExpiredFetchTime
+     *            the entries fetched before this date are expired and replaced first
+     * @return true if the subscriptions have been stored
+     */
+    public boolean put( String strUserId, String strAccountId, AccountSubscriptionState state, long lExpiredFetchTime )
+    {
+        long [ ] arrKey = getKey( strUserId, strAccountId );
+        int nSet = getSet( arrKey );
+        int [ ] arrIds = state.getSubscriptionIds( );
+
+        synchronized( getLock( nSet ) )
+        {
+            int nSlot = findSlot( nSet, arrKey );
+
+            if ( arrIds.length > _nMaxIds )
+            {
+                // Too large for a slot : the previous state must not be served anymore
+                if ( nSlot >= 0 )
+                {
+                    clearSlot( nSlot );
+                }
+                _oversized.increment( );
+                return false;
+            }
+
+            if ( nSlot < 0 )
+            {
+                nSlot = findVictim( nSet, arrKey, lExpiredFetchTime );
+                if ( nSlot < 0 )
+                {
+                    _rejections.increment( );
+                    return false;
+                }
+            }
+
+            _buffer.putLong( nSlot + OFFSET_KEY_HIGH, arrKey [0] );
+            _buffer.putLong( nSlot + OFFSET_KEY_LOW, arrKey [1] );
+            _buffer.putLong( nSlot + OFFSET_FETCH_TIME, state.getFetchTime( ) );
+            _buffer.putInt( nSlot + OFFSET_COUNT, arrIds.length );
+            for ( int i = 0; i < arrIds.length; i++ )
+            {
+                _buffer.putInt( nSlot + OFFSET_IDS + 4 * i, arrIds [i] );
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Remove the subscriptions of a user to an account
+     * 
+     * @param strUserId
+     *            the user email
+     * @param strAccountId
+     *            the account id
+     */
+    public void remove( String strUserId, String strAccountId )
+    {
+        long [ ] arrKey = getKey( strUserId, strAccountId );
+        int nSet = getSet( arrKey );
+
+        synchronized( getLock( nSet ) )
+        {
+            int nSlot = findSlot( nSet, arrKey );
+            if ( nSlot >= 0 )
+            {
+                clearSlot( nSlot );
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum number of subscription ids of an entry
+     * 
+     * @return the number of ids of a slot
+     */
+    public int getMaxIds( )
+    {
+        return _nMaxIds;
+    }
+
+    /**
+     * Remove all the entries
+     */
+    public void clear( )
+    {
+        for ( int nStripe = 0; nStripe < _locks.length; nStripe++ )
+        {
+            synchronized( _locks [nStripe] )
+            {
+                for ( int nSet = nStripe; nSet < _nSets; nSet += _locks.length )
+                {
+                    for ( int nWay = 0; nWay < WAYS; nWay++ )
+                    {
+                        int nSlot = getSlot( nSet, nWay );
+                        if ( !isFree( nSlot ) )
+                        {
+                            clearSlot( nSlot );
+                        }
+                    }
+                }
+            }
+        }
+        _sketch.clear( );
+    }
+
+    /**
+     * Returns the number of entries
+     * 
+     * @return the number of entries
+     */
+    public int size( )
+    {
+        return _nSize.get( );
+    }
+
+    /**
+     * Returns the maximum number of entries
+     * 
+     * @return the capacity
+     */
+    public int getCapacity( )
+    {
+        return _nSets * WAYS;
+    }
+
+    /**
+     * Returns the memory allocated for the entries
+     * 
+     * @return the size in bytes
+     */
+    public long getMemorySize( )
+    {
+        return _buffer.capacity( );
+    }
+
+    /**
+     * Returns the memory used by the stored entries
+     * 
+     * @return the size in bytes
+     */
+    public long getUsedMemorySize( )
+    {
+        return (long) _nSize.get( ) * _nSlotSize;
+    }
+
+    /**
+     * Returns the number of expired entries replaced by new entries
+     * 
+     * @return the number of evictions
+     */
+    public long getEvictionsExpired( )
+    {
+        return _evictionsExpired.sum( );
+    }
+
+    /**
+     * Returns the number of valid entries replaced by more frequently used entries
+     * 
+     * @return the number of evictions
+     */
+    public long getEvictionsCapacity( )
+    {
+        return _evictionsCapacity.sum( );
+    }
+
+    /**
+     * Returns the number of new entries rejected because their set is full of more frequently used entries
+     * 
+     * @return the number of rejections
+     */
+    public long getRejections( )
+    {
+        return _rejections.sum( );
+    }
+
+    /**
+     * Returns the number of entries rejected because they have more ids than a slot can hold
+     * 
+     * @return the number of rejections
+     */
+    public long getOversized( )
+    {
+        return _oversized.sum( );
+    }
+
+    /**
+     * Find the slot of a key in its set
+     * 
+     * @param nSet
+     *            the set
+     * @param arrKey
+     *            the key
+     * @return the slot position, -1 if the key is not stored
+     */
+    private int findSlot( int nSet, long [ ] arrKey )
+    {
+        for ( int nWay = 0; nWay < WAYS; nWay++ )
+        {
+            int nSlot = getSlot( nSet, nWay );
+            if ( _buffer.getLong( nSlot + OFFSET_KEY_HIGH ) == arrKey [0] && _buffer.getLong( nSlot + OFFSET_KEY_LOW ) == arrKey [1] )
+            {
+                return nSlot;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Find the slot receiving a new key : a free slot, else an expired slot, else the least frequently used slot if the new key is used more
+     * frequently
+     * 
+     * @param nSet
+     *            the set
+     * @param arrKey
+     *            the new key
+     * @param lExpiredFetchTime
+     *            the entries fetched before this date are expired
+     * @return the slot position, -1 if the new key is rejected
+     */
+    private int findVictim( int nSet, long [ ] arrKey, long lExpiredFetchTime )
+    {
+        int nVictim = -1;
+        int nVictimFrequency = Integer.MAX_VALUE;
+
+        for ( int nWay = 0; nWay < WAYS; nWay++ )
+        {
+            int nSlot = getSlot( nSet, nWay );
+            if ( isFree( nSlot ) )
+            {
+                _nSize.incrementAndGet( );
+                return nSlot;
+            }
+        }
+
+        for ( int nWay = 0; nWay < WAYS; nWay++ )
+        {
+            int nSlot = getSlot( nSet, nWay );
+            if ( _buffer.getLong( nSlot + OFFSET_FETCH_TIME ) < lExpiredFetchTime )
+            {
+                _evictionsExpired.increment( );
+                return nSlot;
+            }
+
+            int nFrequency = _sketch.frequency( _buffer.getLong( nSlot + OFFSET_KEY_LOW ) );
+            if ( nFrequency < nVictimFrequency )
+            {
+                nVictim = nSlot;
+                nVictimFrequency = nFrequency;
+            }
+        }
+
+        if ( _sketch.frequency( arrKey [1] ) > nVictimFrequency )
+        {
+            _evictionsCapacity.increment( );
+            return nVictim;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Free a slot
+     * 
+     * @param nSlot
+     *            the slot position
+     */
+    private void clearSlot( int nSlot )
+    {
+        _buffer.putLong( nSlot + OFFSET_KEY_HIGH, 0L );
+        _buffer.putLong( nSlot + OFFSET_KEY_LOW, 0L );
+        _nSize.decrementAndGet( );
+    }
+
+    private boolean isFree( int nSlot )
+    {
+        return _buffer.getLong( nSlot + OFFSET_KEY_HIGH ) == 0L && _buffer.getLong( nSlot + OFFSET_KEY_LOW ) == 0L;
+    }
+
+    private int getSlot( int nSet, int nWay )
+    {
+        return ( nSet * WAYS + nWay ) * _nSlotSize;
+    }
+
+    private int getSet( long [ ] arrKey )
+    {
+        return (int) Math.floorMod( arrKey [0], (long) _nSets );
+    }
+
+    private Object getLock( int nSet )
+    {
+        return _locks [nSet % _locks.length];
+    }
+
+    /**
+     * Returns the key of a user and an account : the hash of the email, normalized by the caller, and the account id, never 0
+     * 
+     * @param strUserId
+     *            the user email
+     * @param strAccountId
+     *            the account id
+     * @return the 128 bits key, high bits first
+     */
+    private long [ ] getKey( String strUserId, String strAccountId )
+    {
+        String strKey = strUserId + '\n' + strAccountId;
+        byte [ ] arrHash = newDigest( ).digest( strKey.getBytes( StandardCharsets.UTF_8 ) );
+
+        ByteBuffer hash = ByteBuffer.wrap( arrHash );
+        long lHigh = hash.getLong( );
+        long lLow = hash.getLong( );
+
+        return new long [ ] {
+                lHigh, ( lHigh == 0L && lLow == 0L ) ? 1L : lLow
+        };
+    }
+
+    private static MessageDigest newDigest( )
+    {
+        try
+        {
+            return MessageDigest.getInstance( "MD5" );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+}
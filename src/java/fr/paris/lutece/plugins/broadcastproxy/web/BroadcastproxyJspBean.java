@@ -36,6 +36,8 @@ package fr.paris.lutece.plugins.broadcastproxy.web;
 import fr.paris.lutece.plugins.broadcastproxy.business.Feed;
 import fr.paris.lutece.plugins.broadcastproxy.business.Subscription;
 import fr.paris.lutece.plugins.broadcastproxy.service.BroadcastService;
+import fr.paris.lutece.plugins.broadcastproxy.service.CacheMetricsService;
+import fr.paris.lutece.portal.service.admin.AccessDeniedException;
 import fr.paris.lutece.portal.service.util.AppLogService;
 import fr.paris.lutece.portal.service.util.AppPropertiesService;
 import fr.paris.lutece.portal.util.mvc.admin.MVCAdminJspBean;
@@ -53,7 +55,7 @@ import javax.servlet.http.HttpServletRequest;
 /**
  * This class provides the user interface to manage Lobby features ( manage, create, modify, remove )
  */
-@Controller( controllerJsp = "ManageBroadcastProxy.jsp", controllerPath = "jsp/admin/plugins/broadcastproxy/", right = "BROADCASTPROXY_MANAGEMENT" )
+@Controller( controllerJsp = "ManageBroadcastProxy.jsp", controllerPath = "jsp/admin/plugins/broadcastproxy/", right = BroadcastproxyJspBean.RIGHT_MANAGE_BROADCASTPROXY )
 public class BroadcastproxyJspBean extends MVCAdminJspBean
 {
     /**
@@ -61,14 +63,20 @@ public class BroadcastproxyJspBean extends MVCAdminJspBean
      */
     private static final long serialVersionUID = 1L;
 
+    // Rights
+    public static final String RIGHT_MANAGE_BROADCASTPROXY = "BROADCASTPROXY_MANAGEMENT";
+
     // Templates
     private static final String TEMPLATE_TEST_BROADCASTPROXY = "/admin/plugins/broadcastproxy/managebroadcastproxy.html";
+    private static final String TEMPLATE_CACHE_METRICS = "/admin/plugins/broadcastproxy/cache_metrics.html";
 
     // actions & views
     private static final String VIEW_TEST_BROADCAST = "testBroadCast";
     private static final String ACTION_UPDATE_USER_SUBSCRIPTIONS = "updateUserSubscriptions";
     private static final String ACTION_UNSUBSCRIBE = "unsubscribe";
     private static final String ACTION_SUBSCRIBE = "subscribe";
+    private static final String VIEW_CACHE_METRICS = "cacheMetrics";
+    private static final String ACTION_RESET_CACHE_METRICS = "resetCacheMetrics";
 
     // Parameters
     private static final String PARAMETER_USER_ID = "user_id";
@@ -86,6 +94,7 @@ public class BroadcastproxyJspBean extends MVCAdminJspBean
     private static final String MARK_BROADCASTPROXY = "broadcastproxy";
     private static final String MARK_LAST_USER_ID = "last_user_id";
     private static final String MARK_LAST_SUBSCRIPTION_TYPE_ID = "last_subscription_type_id";
+    private static final String MARK_CACHE_METRICS = "cache_metrics";
 
     // messages
     private static final String MSG_ERROR_GET_USER_SUBSCRIPTIONS = "Error while trying to get user Subscriptions";
@@ -152,6 +161,53 @@ public class BroadcastproxyJspBean extends MVCAdminJspBean
         return getPage( PROPERTY_PAGE_TITLE_BROADCASTPROXY, TEMPLATE_TEST_BROADCASTPROXY, model );
     }
 
+    /**
+     * Build the view of the metrics of the cache of the user subscriptions
+     * 
+     * @param request
+     *            The HTTP request
+     * @return The page
+     */
+    @View( VIEW_CACHE_METRICS )
+    public String getCacheMetrics( HttpServletRequest request )
+    {
+        Map<String, Object> model = getModel( );
+        model.put( MARK_CACHE_METRICS, CacheMetricsService.getInstance( ).getValues( ) );
+
+        return getPage( PROPERTY_PAGE_TITLE_BROADCASTPROXY, TEMPLATE_CACHE_METRICS, model );
+    }
+
+    /**
+     * Reset the metrics of the cache of the user subscriptions
+     * 
+     * @param request
+     *            The HTTP request
+     * @return The page
+     */
+    @Action( ACTION_RESET_CACHE_METRICS )
+    public String doResetCacheMetrics( HttpServletRequest request )
+    {
+        CacheMetricsService.getInstance( ).reset( );
+
+        return redirectView( request, VIEW_CACHE_METRICS );
+    }
+
+    /**
+     * Returns the metrics of the cache of the user subscriptions as JSON
+     * 
+     * @param request
+     *            The HTTP request
+     * @return The JSON metrics
+     * @throws AccessDeniedException
+     *             if the user has not the right to manage the plugin
+     */
+    public String getCacheMetricsJson( HttpServletRequest request ) throws AccessDeniedException
+    {
+        init( request, RIGHT_MANAGE_BROADCASTPROXY );
+
+        return CacheMetricsService.getInstance( ).getValuesAsJson( );
+    }
+
     /**
      * Update action
      * 
@@ -0,0 +1,615 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.broadcastproxy.web;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.paris.lutece.plugins.broadcastproxy.business.UserSubscriptionState;
+import fr.paris.lutece.plugins.broadcastproxy.service.AccountService;
+import fr.paris.lutece.plugins.broadcastproxy.service.AdmissionService;
+import fr.paris.lutece.plugins.broadcastproxy.service.UpdateThrottleService;
+import fr.paris.lutece.plugins.broadcastproxy.service.UserSubscriptionService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.util.json.ErrorJsonResponse;
+import fr.paris.lutece.util.json.JsonResponse;
+import fr.paris.lutece.util.json.JsonUtil;
+
+/**
+ * 
+ * JSON endpoint of the subscriptions of the authenticated user, with the same responses as the actions of the BroadcastproxyXPage : GET returns
+ * the subscriptions, POST updates a subscription. The request thread is released while the provider is called, when the container supports
+ * asynchronous requests, otherwise the request thread waits for the result. A response is sent at the latest after the deadline. With the parameter
+ * format=compact, the subscriptions are streamed to the response as arrays of ids : {"status":"OK","result":{"newsletters":[1,2],"arrondissements":["PARIS_5"]}}
+ * The subscriptions are sent with an ETag built from their version, a request with a matching If-None-Match header gets a 304 without body. The
+ * requests calling the provider are limited by the AdmissionService : a rejected request gets the cached subscriptions, or a 503 with a JSON error.
+ * The updates of a user are limited by the UpdateThrottleService : an update over the limit gets a 429 with a JSON error.
+ *
+ */
+public class BroadcastproxyServlet extends HttpServlet
+{
+    private static final long serialVersionUID = 1L;
+
+    private static final String PROPERTY_ASYNC_ENABLED = "broadcastproxy.servlet.async.enabled";
+    private static final String PROPERTY_TIMEOUT = "broadcastproxy.servlet.timeout";
+    private static final long DEFAULT_TIMEOUT = 30;
+    private static final String CONTENT_TYPE_JSON = "application/json";
+    private static final String ENCODING_UTF8 = "UTF-8";
+    private static final String JSON_NODE_ACCOUNT = "account";
+    private static final String JSON_NODE_ID = "id";
+    private static final String JSON_NODE_ACTIVE = "active";
+    private static final String JSON_NODE_STATUS = "status";
+    private static final String JSON_NODE_RESULT = "result";
+    private static final String JSON_NODE_NEWSLETTERS = "newsletters";
+    private static final String JSON_NODE_ARRONDISSEMENTS = "arrondissements";
+    private static final String STATUS_OK = "OK";
+    private static final String PARAMETER_FORMAT = "format";
+    private static final String FORMAT_COMPACT = "compact";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String CACHE_CONTROL_REVALIDATE = "private, no-cache";
+    private static final String ETAG_WEAK_PREFIX = "W/";
+    private static final String ETAG_ANY = "*";
+    private static final String ETAG_SUFFIX_COMPACT = "-c";
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+    private static final String RETRY_AFTER_SECONDS = "5";
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private static final String MSG_NOT_AUTHENTICATED = "User not authentified.";
+    private static final String MSG_UNAVAILABLE = "Vos newsletters sont momentanément indisponibles.";
+    private static final String MSG_ERROR_READ = "An error occured while receiving the response";
+    private static final String MSG_ERROR_UPDATE = "An error occured while updating the subscriptions";
+
+    // The generators must not close the writer of the response
+    private static final JsonFactory _jsonFactory = new JsonFactory( ).disable( JsonGenerator.Feature.AUTO_CLOSE_TARGET );
+
+    /**
+     * Body of a JSON response, written directly to the response
+     */
+    @FunctionalInterface
+    private interface JsonBody
+    {
+        /**
+         * Write the body, with its status and headers
+         * 
+         * @param response
+         *            the response
+         * @throws IOException
+         *             if the body can't be written
+         */
+        void writeTo( HttpServletResponse response ) throws IOException;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doGet( HttpServletRequest request, HttpServletResponse response ) throws IOException
+    {
+        String strUserMail = BroadcastproxyXPage.getMailUserAuthenticated( request );
+        if ( StringUtils.isBlank( strUserMail ) )
+        {
+            writeJson( response, body( JsonUtil.buildJsonResponse( new ErrorJsonResponse( MSG_NOT_AUTHENTICATED ) ) ) );
+            return;
+        }
+
+        boolean bCompact = FORMAT_COMPACT.equals( request.getParameter( PARAMETER_FORMAT ) );
+        String strIfNoneMatch = request.getHeader( HEADER_IF_NONE_MATCH );
+        UserSubscriptionService service = UserSubscriptionService.getInstance( );
+
+        CompletableFuture<UserSubscriptionState> futureState;
+        if ( service.isCached( strUserMail ) )
+        {
+            futureState = service.getUserSubscriptionStateAsync( strUserMail );
+        }
+        else if ( AdmissionService.getInstance( ).tryAcquire( ) )
+        {
+            futureState = admitted( ( ) -> service.getUserSubscriptionStateAsync( strUserMail ) );
+        }
+        else
+        {
+            // The provider can't be called : the cached subscriptions are sent whatever their age
+            UserSubscriptionState state = service.getCachedUserSubscriptionState( strUserMail );
+            if ( state == null )
+            {
+                writeJson( response, overloaded( ) );
+                return;
+            }
+            AdmissionService.getInstance( ).recordDegraded( );
+            futureState = CompletableFuture.completedFuture( state );
+        }
+
+        CompletableFuture<JsonBody> future = futureState.thenApply( state -> toSubscriptionsBody( state, bCompact, strIfNoneMatch ) );
+
+        respond( request, response, future, body( JsonUtil.buildJsonResponse( new ErrorJsonResponse( MSG_UNAVAILABLE ) ) ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doPost( HttpServletRequest request, HttpServletResponse response ) throws IOException
+    {
+        String strUserMail = BroadcastproxyXPage.getMailUserAuthenticated( request );
+        if ( StringUtils.isBlank( strUserMail ) )
+        {
+            writeJson( response, body( JsonUtil.buildJsonResponse( new ErrorJsonResponse( MSG_NOT_AUTHENTICATED ) ) ) );
+            return;
+        }
+
+        String strJson;
+        JsonNode jsonNodes;
+        try
+        {
+            strJson = readBody( request );
+            jsonNodes = new ObjectMapper( ).readTree( strJson );
+        }
+        catch( IOException e )
+        {
+            writeJson( response, body( JsonUtil.buildJsonResponse( new ErrorJsonResponse( MSG_ERROR_READ ) ) ) );
+            return;
+        }
+
+        if ( jsonNodes == null || jsonNodes.get( JSON_NODE_ACCOUNT ) == null || jsonNodes.get( JSON_NODE_ID ) == null || jsonNodes.get( JSON_NODE_ACTIVE ) == null )
+        {
+            writeJson( response, body( JsonUtil.buildJsonResponse( new ErrorJsonResponse( MSG_ERROR_UPDATE ) ) ) );
+            return;
+        }
+
+        long lThrottleWait = UpdateThrottleService.getInstance( ).tryAcquire( strUserMail );
+        if ( lThrottleWait > 0 )
+        {
+            writeJson( response, throttled( lThrottleWait ) );
+            return;
+        }
+
+        if ( !AdmissionService.getInstance( ).tryAcquire( ) )
+        {
+            writeJson( response, overloaded( ) );
+            return;
+        }
+
+        // The cached subscriptions are updated once the update is confirmed
+        CompletableFuture<JsonBody> future = admitted( ( ) -> UserSubscriptionService.getInstance( ).updateUserSubscriptionAsync( strUserMail,
+                jsonNodes.get( JSON_NODE_ACCOUNT ).asText( ), strJson, jsonNodes.get( JSON_NODE_ID ).asInt( ),
+                Boolean.valueOf( jsonNodes.get( JSON_NODE_ACTIVE ).asText( ) ) ) )
+                .thenApply( bUpdated -> body( bUpdated ? JsonUtil.buildJsonResponse( new JsonResponse( "ok" ) )
+                        : JsonUtil.buildJsonResponse( new ErrorJsonResponse( MSG_ERROR_UPDATE ) ) ) );
+
+        respond( request, response, future, body( JsonUtil.buildJsonResponse( new ErrorJsonResponse( MSG_ERROR_UPDATE ) ) ) );
+    }
+
+    /**
+     * Start the call to the provider of an admitted request : the permit is held until the provider has answered, even after the deadline of the
+     * response
+     * 
+     * @param supplier
+     *            the call to the provider
+     * @return the result of the call
+     */
+    private static <T> CompletableFuture<T> admitted( Supplier<CompletableFuture<T>> supplier )
+    {
+        CompletableFuture<T> future;
+        try
+        {
+            future = supplier.get( );
+        }
+        catch( RuntimeException e )
+        {
+            AdmissionService.getInstance( ).release( );
+            throw e;
+        }
+        future.whenComplete( ( result, e ) -> AdmissionService.getInstance( ).release( ) );
+
+        return future;
+    }
+
+    /**
+     * Get the response of a request rejected by the admission control
+     * 
+     * @return a 503 with a JSON error, the client may try again after a few seconds
+     */
+    private static JsonBody overloaded( )
+    {
+        String strJson = JsonUtil.buildJsonResponse( new ErrorJsonResponse( BroadcastproxyXPage.MSG_OVERLOADED ) );
+
+        return response -> {
+            response.setStatus( HttpServletResponse.SC_SERVICE_UNAVAILABLE );
+            response.setHeader( HEADER_RETRY_AFTER, RETRY_AFTER_SECONDS );
+            getJsonWriter( response ).write( strJson );
+        };
+    }
+
+    /**
+     * Get the response of an update rejected because the user has sent too many updates
+     * 
+     * @param lWait
+     *            the time in milliseconds before the user may send a new update
+     * @return a 429 with a JSON error
+     */
+    private static JsonBody throttled( long lWait )
+    {
+        String strJson = JsonUtil.buildJsonResponse( new ErrorJsonResponse( BroadcastproxyXPage.MSG_THROTTLED ) );
+        String strRetryAfter = String.valueOf( Math.max( 1, TimeUnit.MILLISECONDS.toSeconds( lWait + 999 ) ) );
+
+        return response -> {
+            response.setStatus( SC_TOO_MANY_REQUESTS );
+            response.setHeader( HEADER_RETRY_AFTER, strRetryAfter );
+            getJsonWriter( response ).write( strJson );
+        };
+    }
+
+    /**
+     * Send the result of a request : asynchronously if the container supports it, otherwise by waiting for it
+     * 
+     * @param request
+     *            the request
+     * @param response
+     *            the response
+     * @param future
+     *            the JSON response
+     * @param timeoutBody
+     *            the JSON response sent if the result is not available before the deadline
+     * @throws IOException
+     *             if the response can't be written
+     */
+    private static void respond( HttpServletRequest request, HttpServletResponse response, CompletableFuture<JsonBody> future, JsonBody timeoutBody )
+            throws IOException
+    {
+        long lTimeout = TimeUnit.SECONDS.toMillis( AppPropertiesService.getPropertyLong( PROPERTY_TIMEOUT, DEFAULT_TIMEOUT ) );
+
+        if ( future.isDone( ) || !request.isAsyncSupported( ) || !AppPropertiesService.getPropertyBoolean( PROPERTY_ASYNC_ENABLED, true ) )
+        {
+            writeJson( response, waitResponse( future, lTimeout, timeoutBody ) );
+            return;
+        }
+
+        AsyncContext asyncContext = request.startAsync( );
+        asyncContext.setTimeout( lTimeout );
+
+        // The response is written once, by the completion of the future or by the deadline
+        AtomicBoolean bResponded = new AtomicBoolean( );
+        asyncContext.addListener( new AsyncListener( )
+        {
+            @Override
+            public void onTimeout( AsyncEvent event ) throws IOException
+            {
+                complete( asyncContext, bResponded, timeoutBody );
+            }
+
+            @Override
+            public void onError( AsyncEvent event ) throws IOException
+            {
+                bResponded.set( true );
+            }
+
+            @Override
+            public void onComplete( AsyncEvent event ) throws IOException
+            {
+                bResponded.set( true );
+            }
+
+            @Override
+            public void onStartAsync( AsyncEvent event ) throws IOException
+            {
+                // Nothing to do
+            }
+        } );
+
+        future.whenComplete( ( jsonBody, e ) -> {
+            if ( e != null )
+            {
+                AppLogService.error( "Error occured while processing a broadcastproxy request : " + e.getMessage( ), e );
+            }
+            complete( asyncContext, bResponded, e == null ? jsonBody : timeoutBody );
+        } );
+    }
+
+    /**
+     * Write the response of an asynchronous request, unless it has already been written
+     * 
+     * @param asyncContext
+     *            the context of the request
+     * @param bResponded
+     *            true once the response has been written
+     * @param jsonBody
+     *            the JSON response
+     */
+    private static void complete( AsyncContext asyncContext, AtomicBoolean bResponded, JsonBody jsonBody )
+    {
+        if ( !bResponded.compareAndSet( false, true ) )
+        {
+            return;
+        }
+
+        try
+        {
+            writeJson( asyncContext.getResponse( ), jsonBody );
+        }
+        catch( IOException | IllegalStateException e )
+        {
+            AppLogService.error( "Error occured while writing a broadcastproxy response : " + e.getMessage( ), e );
+        }
+        finally
+        {
+            asyncContext.complete( );
+        }
+    }
+
+    /**
+     * Wait for the result of a request
+     * 
+     * @param future
+     *            the JSON response
+     * @param lTimeout
+     *            the deadline in milliseconds
+     * @param timeoutBody
+     *            the JSON response if the result is not available before the deadline
+     * @return the JSON response
+     */
+    private static JsonBody waitResponse( CompletableFuture<JsonBody> future, long lTimeout, JsonBody timeoutBody )
+    {
+        try
+        {
+            return future.get( lTimeout, TimeUnit.MILLISECONDS );
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+        }
+        catch( ExecutionException | TimeoutException e )
+        {
+            AppLogService.error( "Error occured while processing a broadcastproxy request : " + e.getMessage( ), e );
+        }
+
+        return timeoutBody;
+    }
+
+    /**
+     * Build the JSON response of the subscriptions
+     * 
+     * @param state
+     *            the subscriptions, null if they are not available
+     * @return the JSON response
+     */
+    private static String toJsonResponse( UserSubscriptionState state )
+    {
+        if ( state == null )
+        {
+            return JsonUtil.buildJsonResponse( new ErrorJsonResponse( MSG_UNAVAILABLE ) );
+        }
+
+        return JsonUtil.buildJsonResponse( new JsonResponse( BroadcastproxyXPage.toJson( state ) ) );
+    }
+
+    /**
+     * Build the response of the subscriptions : a 304 without body if the client already has this version of the subscriptions
+     * 
+     * @param state
+     *            the subscriptions, null if they are not available
+     * @param bCompact
+     *            true for the compact format
+     * @param strIfNoneMatch
+     *            the If-None-Match header of the request, may be null
+     * @return the response
+     */
+    private static JsonBody toSubscriptionsBody( UserSubscriptionState state, boolean bCompact, String strIfNoneMatch )
+    {
+        if ( state == null )
+        {
+            return body( JsonUtil.buildJsonResponse( new ErrorJsonResponse( MSG_UNAVAILABLE ) ) );
+        }
+
+        String strETag = getETag( state, bCompact );
+        if ( matches( strIfNoneMatch, strETag ) )
+        {
+            return response -> {
+                setValidators( response, strETag );
+                response.setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+            };
+        }
+
+        JsonBody jsonBody = bCompact ? toCompactBody( state ) : body( toJsonResponse( state ) );
+
+        return response -> {
+            setValidators( response, strETag );
+            jsonBody.writeTo( response );
+        };
+    }
+
+    /**
+     * Get the ETag of the subscriptions : the version of the subscriptions and of the arrondissements, for a format
+     * 
+     * @param state
+     *            the subscriptions
+     * @param bCompact
+     *            true for the compact format
+     * @return the ETag
+     */
+    private static String getETag( UserSubscriptionState state, boolean bCompact )
+    {
+        long lVersion = state.getVersion( ) * 31 + AccountService.getInstance( ).getArrondissementNames( ).hashCode( );
+
+        return "\"" + Long.toHexString( lVersion ) + ( bCompact ? ETAG_SUFFIX_COMPACT : "" ) + "\"";
+    }
+
+    /**
+     * Tells if an If-None-Match header matches an ETag
+     * 
+     * @param strIfNoneMatch
+     *            the header, a list of ETags, may be null
+     * @param strETag
+     *            the ETag
+     * @return true if the header matches
+     */
+    private static boolean matches( String strIfNoneMatch, String strETag )
+    {
+        if ( StringUtils.isBlank( strIfNoneMatch ) )
+        {
+            return false;
+        }
+
+        for ( String strCandidate : strIfNoneMatch.split( "," ) )
+        {
+            // A compression filter may have weakened the ETag
+            String strTrimmed = StringUtils.removeStart( strCandidate.trim( ), ETAG_WEAK_PREFIX );
+            if ( strTrimmed.equals( strETag ) || strTrimmed.equals( ETAG_ANY ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Set the validators of a response : the browser has to check that its copy is still valid before using it
+     * 
+     * @param response
+     *            the response
+     * @param strETag
+     *            the ETag
+     */
+    private static void setValidators( HttpServletResponse response, String strETag )
+    {
+        response.setHeader( HEADER_ETAG, strETag );
+        response.setHeader( HEADER_CACHE_CONTROL, CACHE_CONTROL_REVALIDATE );
+    }
+
+    /**
+     * Build the compact JSON response of the subscriptions, streamed to the response in one pass
+     * 
+     * @param state
+     *            the subscriptions, null if they are not available
+     * @return the JSON response
+     */
+    private static JsonBody toCompactBody( UserSubscriptionState state )
+    {
+        if ( state == null )
+        {
+            return body( JsonUtil.buildJsonResponse( new ErrorJsonResponse( MSG_UNAVAILABLE ) ) );
+        }
+
+        return response -> {
+            List<String> listArrondissementNames = AccountService.getInstance( ).getArrondissementNames( );
+            try ( JsonGenerator generator = _jsonFactory.createGenerator( getJsonWriter( response ) ) )
+            {
+                generator.writeStartObject( );
+                generator.writeStringField( JSON_NODE_STATUS, STATUS_OK );
+                generator.writeObjectFieldStart( JSON_NODE_RESULT );
+                generator.writeArrayFieldStart( JSON_NODE_NEWSLETTERS );
+                for ( int nId : state.getNewsletterIds( ) )
+                {
+                    generator.writeNumber( nId );
+                }
+                generator.writeEndArray( );
+                generator.writeArrayFieldStart( JSON_NODE_ARRONDISSEMENTS );
+                for ( int i = 0; i < listArrondissementNames.size( ); i++ )
+                {
+                    if ( state.isArrondissementSubscribed( i ) )
+                    {
+                        generator.writeString( listArrondissementNames.get( i ) );
+                    }
+                }
+                generator.writeEndArray( );
+                generator.writeEndObject( );
+                generator.writeEndObject( );
+            }
+        };
+    }
+
+    /**
+     * Get the body of a JSON response already built
+     * 
+     * @param strJson
+     *            the JSON response
+     * @return the body
+     */
+    private static JsonBody body( String strJson )
+    {
+        return response -> getJsonWriter( response ).write( strJson );
+    }
+
+    private static String readBody( HttpServletRequest request ) throws IOException
+    {
+        StringBuilder sb = new StringBuilder( );
+        String strLine;
+
+        BufferedReader reader = request.getReader( );
+        while ( ( strLine = reader.readLine( ) ) != null )
+        {
+            sb.append( strLine );
+        }
+
+        return sb.toString( );
+    }
+
+    private static void writeJson( ServletResponse response, JsonBody jsonBody ) throws IOException
+    {
+        jsonBody.writeTo( (HttpServletResponse) response );
+    }
+
+    private static PrintWriter getJsonWriter( ServletResponse response ) throws IOException
+    {
+        response.setContentType( CONTENT_TYPE_JSON );
+        response.setCharacterEncoding( ENCODING_UTF8 );
+
+        return response.getWriter( );
+    }
+}
@@ -36,19 +36,23 @@ package fr.paris.lutece.plugins.broadcastproxy.web;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 
-import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.json.simple.JSONObject;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import fr.paris.lutece.plugins.broadcastproxy.service.BroadcastCacheService;
-import fr.paris.lutece.plugins.broadcastproxy.service.BroadcastService;
+import fr.paris.lutece.plugins.broadcastproxy.business.UserSubscriptionState;
+import fr.paris.lutece.plugins.broadcastproxy.service.AccountService;
+import fr.paris.lutece.plugins.broadcastproxy.service.AdmissionService;
+import fr.paris.lutece.plugins.broadcastproxy.service.UpdateThrottleService;
+import fr.paris.lutece.plugins.broadcastproxy.service.UserSubscriptionService;
 import fr.paris.lutece.portal.service.i18n.I18nService;
 import fr.paris.lutece.portal.service.security.LuteceUser;
 import fr.paris.lutece.portal.service.security.SecurityService;
@@ -80,12 +84,23 @@ public class BroadcastproxyXPage extends MVCApplication
 
     private static final String ACTION_UPDATE_USER_SUBSCRIPTIONS = "updateUserSubscriptions";
     private static final String ACTION_GET_USER_SUBSCRIPTIONS = "getUserSubscriptions";
+    private static final String ACTION_UPDATE_USER_SUBSCRIPTIONS_BATCH = "updateUserSubscriptionsBatch";
 
     private static final String PROPERTY_MSG_ERROR_GET_USER_SUBSCRIPTIONS = "broadcastproxy.msg.ERROR_GET_USER_SUBSCRIPTIONS";
-    private static final String PROPERTY_ACCOUNT_ID = AppPropertiesService.getProperty( "dolist.CONSTANTE_ACCOUNT_ID" );
-    private static final String PROPERTY_ACCOUNT_ADDROND_PREFIX = "dolist.CONSTANTE_ACCOUNT_ID_";
+
+    /**
+     * Error of the requests rejected by the admission control
+     */
+    static final String MSG_OVERLOADED = "Le service est momentanément surchargé, veuillez réessayer dans quelques instants.";
+
+    /**
+     * Error of the updates rejected because the user has sent too many updates
+     */
+    static final String MSG_THROTTLED = "Vous avez effectué trop de modifications en peu de temps, veuillez réessayer dans quelques instants.";
     
     private static final String JSON_NODE_ACCOUNT = "account";
+    private static final String JSON_NODE_ID = "id";
+    private static final String JSON_NODE_ACTIVE = "active";
     
     /**
      * Check if the current (front) user is authenticated
@@ -94,7 +109,7 @@ public class BroadcastproxyXPage extends MVCApplication
      *            The request
      * @return true if authenticated
      */
-    private String getMailUserAuthenticated( HttpServletRequest request )
+    static String getMailUserAuthenticated( HttpServletRequest request )
     {
         LuteceUser user = null;
 
@@ -132,41 +147,57 @@ public class BroadcastproxyXPage extends MVCApplication
      *            The request
      * @return
      */
-    @SuppressWarnings( "unchecked" )
     @Action( ACTION_GET_USER_SUBSCRIPTIONS )
     public XPage doGetUserSubscriptions( HttpServletRequest request )
     {
         String mailUser = getMailUserAuthenticated( request );
-        String strUserSubscriptionIds = BroadcastCacheService.getInstance( ).getUserSubscriptionIds( mailUser )  ;
         if ( StringUtils.isBlank( mailUser ) )
         {
             return responseJSON( JsonUtil.buildJsonResponse( new ErrorJsonResponse( "User not authentified." ) ) );
         }
 
+        // Only the requests which have to call the provider need a permit
+        if ( UserSubscriptionService.getInstance( ).isCached( mailUser ) )
+        {
+            return getUserSubscriptions( mailUser );
+        }
+        if ( !AdmissionService.getInstance( ).tryAcquire( ) )
+        {
+            return getCachedUserSubscriptions( mailUser );
+        }
+
+        try
+        {
+            return getUserSubscriptions( mailUser );
+        }
+        finally
+        {
+            AdmissionService.getInstance( ).release( );
+        }
+    }
+
+    /**
+     * Get the subscriptions of the user, from the cache or from the provider
+     * 
+     * @param mailUser
+     *            the user id
+     * @return the JSON response
+     */
+    private XPage getUserSubscriptions( String mailUser )
+    {
+        String strUserSubscriptionIds;
         try
         {        
-            if( StringUtils.isEmpty( strUserSubscriptionIds ) )
-            {                     
-                //Retrieve user subscriptions
-                List<JSONObject> listUserSubscriptionIds = new ArrayList<>( );
-                JSONObject newsletters = new JSONObject( );
-                newsletters.put( "newsletters", BroadcastService.getInstance( ).getUserSubscriptionIds( mailUser, PROPERTY_ACCOUNT_ID ) );
-                
-                listUserSubscriptionIds.add( newsletters );
-                
-                loadUserArrondissementSubscription( mailUser, listUserSubscriptionIds );
-                
-                strUserSubscriptionIds = listUserSubscriptionIds.toString( );
-                
-                if ( StringUtils.isEmpty( strUserSubscriptionIds ) )
-                {
-                	String returnedMsg = "Vos newsletters sont momentanément indisponibles.";
-                	return responseJSON( JsonUtil.buildJsonResponse( new ErrorJsonResponse( returnedMsg ) ) );
-                }
-                
-                //Add to cache
-                BroadcastCacheService.getInstance( ).addUserSubscription( mailUser, strUserSubscriptionIds );
+            //Retrieve user subscriptions from the cache, or from all the accounts at once
+            UserSubscriptionState state = UserSubscriptionService.getInstance( ).getUserSubscriptionState( mailUser );
+
+            if ( state == null )
+            {
+                String returnedMsg = "Vos newsletters sont momentanément indisponibles.";
+                return responseJSON( JsonUtil.buildJsonResponse( new ErrorJsonResponse( returnedMsg ) ) );
             }
+
+            strUserSubscriptionIds = toJson( state );
         }
         catch( Exception e )
         {
@@ -180,29 +211,63 @@ public class BroadcastproxyXPage extends MVCApplication
         return xpage;
     }
 
-    @SuppressWarnings( "unchecked" )
-    private void loadUserArrondissementSubscription( String mailUser, List<JSONObject> listUserSubscriptionIds )
+    /**
+     * Get the cached subscriptions of the user, whatever their age, when the provider can't be called
+     * 
+     * @param mailUser
+     *            the user id
+     * @return the JSON response, an error if the subscriptions are not cached
+     */
+    private XPage getCachedUserSubscriptions( String mailUser )
     {
-        // Retrieve user subscriptions by arrondissement
-        List<String> listAccountIds = AppPropertiesService.getKeys( PROPERTY_ACCOUNT_ADDROND_PREFIX );
-        List<JSONObject> jsonArrondissementList = new ArrayList<>( );
-        for ( String strAccountKey : listAccountIds )
+        UserSubscriptionState state = UserSubscriptionService.getInstance( ).getCachedUserSubscriptionState( mailUser );
+        if ( state == null )
         {
-            String strAccountId = AppPropertiesService.getProperty( strAccountKey );
-            if ( StringUtils.isNotEmpty( strAccountId ) )
-            {
-                List<JSONObject> listUserSubscriptionArrond = BroadcastService.getInstance( ).getUserSubscriptionIds( mailUser, strAccountId );
+            return responseJSON( JsonUtil.buildJsonResponse( new ErrorJsonResponse( MSG_OVERLOADED ) ) );
+        }
 
-                JSONObject jsonArrondissement = new JSONObject( );
-                jsonArrondissement.put( "name", strAccountKey.replace( PROPERTY_ACCOUNT_ADDROND_PREFIX, StringUtils.EMPTY ) );
-                jsonArrondissement.put( "subscription", CollectionUtils.isNotEmpty( listUserSubscriptionArrond ) );
+        AdmissionService.getInstance( ).recordDegraded( );
 
-                jsonArrondissementList.add( jsonArrondissement );
-            }
+        return responseJSON( JsonUtil.buildJsonResponse( new JsonResponse( toJson( state ) ) ) );
+    }
+
+    /**
+     * Render the subscriptions of a user : [{"newsletters":[{"id":1}]},{"arrondissements":[{"name":"PARIS_5","subscription":true}]}]
+     * 
+     * @param state
+     *            the subscriptions
+     * @return the JSON
+     */
+    @SuppressWarnings( "unchecked" )
+    static String toJson( UserSubscriptionState state )
+    {
+        List<JSONObject> listNewsletterIds = new ArrayList<>( );
+        for ( int nId : state.getNewsletterIds( ) )
+        {
+            JSONObject json = new JSONObject( );
+            json.put( "id", nId );
+            listNewsletterIds.add( json );
+        }
+
+        List<JSONObject> jsonArrondissementList = new ArrayList<>( );
+        List<String> listArrondissementNames = AccountService.getInstance( ).getArrondissementNames( );
+        for ( int i = 0; i < listArrondissementNames.size( ); i++ )
+        {
+            JSONObject jsonArrondissement = new JSONObject( );
+            jsonArrondissement.put( "name", listArrondissementNames.get( i ) );
+            jsonArrondissement.put( "subscription", state.isArrondissementSubscribed( i ) );
+            jsonArrondissementList.add( jsonArrondissement );
         }
+
+        List<JSONObject> listUserSubscriptionIds = new ArrayList<>( );
+        JSONObject newsletters = new JSONObject( );
+        newsletters.put( "newsletters", listNewsletterIds );
+        listUserSubscriptionIds.add( newsletters );
         JSONObject arrondissements = new JSONObject( );
         arrondissements.put( "arrondissements", jsonArrondissementList );
         listUserSubscriptionIds.add( arrondissements );
+
+        return listUserSubscriptionIds.toString( );
     }
 
     /**
@@ -225,33 +290,164 @@ public class BroadcastproxyXPage extends MVCApplication
         if ( StringUtils.isBlank( mailUser ) )
             return responseJSON( JsonUtil.buildJsonResponse( new ErrorJsonResponse( "User not authentified." ) ) );
 
-        String strJson;
+        String strJson = readBody( request );
+        if ( strJson == null )
+        {
+            return responseJSON( JsonUtil.buildJsonResponse( new ErrorJsonResponse( "An error occured while receiving the response" ) ) );
+        }
+
+        if ( UpdateThrottleService.getInstance( ).tryAcquire( mailUser ) > 0 )
+        {
+            return responseJSON( JsonUtil.buildJsonResponse( new ErrorJsonResponse( MSG_THROTTLED ) ) );
+        }
+        if ( !AdmissionService.getInstance( ).tryAcquire( ) )
+        {
+            return responseJSON( JsonUtil.buildJsonResponse( new ErrorJsonResponse( MSG_OVERLOADED ) ) );
+        }
+
+        // The cached subscriptions are updated once the update is confirmed
+        boolean bUpdated;
+        try
+        {
+            bUpdated = updateSubscriptions( strJson, mailUser );
+        }
+        finally
+        {
+            AdmissionService.getInstance( ).release( );
+        }
+
+        if ( !bUpdated )
+        {
+            return responseJSON( JsonUtil.buildJsonResponse( new ErrorJsonResponse( "An error occured while updating the subscriptions" ) ) );
+        }
+        
+        return responseJSON( JsonUtil.buildJsonResponse( new JsonResponse( "ok" ) ) );
+    }
+
+    /**
+     * Do update several user subscriptions at once using the AJAX mode : the changes are grouped by account, so that each account is updated with a
+     * single request to the provider
+     * 
+     * json data should be like : [ {"id": 1, "active": true, "account": "default"}, {"id": 2, "active": false, "account": "PARIS_5"} ]
+     * 
+     * @param request
+     *            The request
+     * @return
+     */
+    @Action( ACTION_UPDATE_USER_SUBSCRIPTIONS_BATCH )
+    public XPage doUpdateUserSubscriptionsBatch( HttpServletRequest request )
+    {
+        String mailUser = getMailUserAuthenticated( request );
+
+        if ( StringUtils.isBlank( mailUser ) )
+        {
+            return responseJSON( JsonUtil.buildJsonResponse( new ErrorJsonResponse( "User not authentified." ) ) );
+        }
+
+        String strJson = readBody( request );
+        if ( strJson == null )
+        {
+            return responseJSON( JsonUtil.buildJsonResponse( new ErrorJsonResponse( "An error occured while receiving the response" ) ) );
+        }
+
+        Map<String, Map<Integer, Boolean>> mapUpdates;
+        try
+        {
+            mapUpdates = getUpdatesByAccount( strJson );
+        }
+        catch( IOException | IllegalArgumentException e )
+        {
+            AppLogService.error( "An error occured while reading the subscriptions to update : " + e.getMessage( ) );
+            return responseJSON( JsonUtil.buildJsonResponse( new ErrorJsonResponse( "Invalid subscriptions" ) ) );
+        }
+
+        if ( UpdateThrottleService.getInstance( ).tryAcquire( mailUser ) > 0 )
+        {
+            return responseJSON( JsonUtil.buildJsonResponse( new ErrorJsonResponse( MSG_THROTTLED ) ) );
+        }
+        if ( !AdmissionService.getInstance( ).tryAcquire( ) )
+        {
+            return responseJSON( JsonUtil.buildJsonResponse( new ErrorJsonResponse( MSG_OVERLOADED ) ) );
+        }
+
+        boolean bUpdated;
+        try
+        {
+            bUpdated = UserSubscriptionService.getInstance( ).updateUserSubscriptions( mailUser, mapUpdates );
+        }
+        finally
+        {
+            AdmissionService.getInstance( ).release( );
+        }
+
+        if ( !bUpdated )
+        {
+            return responseJSON( JsonUtil.buildJsonResponse( new ErrorJsonResponse( "An error occured while updating the subscriptions" ) ) );
+        }
+
+        return responseJSON( JsonUtil.buildJsonResponse( new JsonResponse( "ok" ) ) );
+    }
+
+    /**
+     * Group the changes of a batch update by account, the last change of a subscription wins
+     * 
+     * @param strJson
+     *            the changes : [ {"id": 1, "active": true, "account": "default"} ]
+     * @return the changes by account name
+     * @throws IOException
+     *             if the JSON is invalid
+     */
+    static Map<String, Map<Integer, Boolean>> getUpdatesByAccount( String strJson ) throws IOException
+    {
+        JsonNode jsonNodes = new ObjectMapper( ).readTree( strJson );
+        if ( jsonNodes == null || !jsonNodes.isArray( ) )
+        {
+            throw new IllegalArgumentException( "An array of changes is expected" );
+        }
+
+        Map<String, Map<Integer, Boolean>> mapUpdates = new LinkedHashMap<>( );
+        for ( JsonNode jsonNode : jsonNodes )
+        {
+            if ( !jsonNode.hasNonNull( JSON_NODE_ID ) )
+            {
+                throw new IllegalArgumentException( "A change has no subscription id" );
+            }
+
+            String strAccount = jsonNode.path( JSON_NODE_ACCOUNT ).asText( );
+            Map<Integer, Boolean> mapChanges = mapUpdates.computeIfAbsent( strAccount, k -> new LinkedHashMap<>( ) );
+            int nId = jsonNode.get( JSON_NODE_ID ).asInt( );
+            // Move the subscription at the end, so that the last change of an arrondissement is the one applied
+            mapChanges.remove( nId );
+            mapChanges.put( nId, Boolean.valueOf( jsonNode.path( JSON_NODE_ACTIVE ).asText( ) ) );
+        }
+
+        return mapUpdates;
+    }
+
+    /**
+     * Read the body of a request
+     * 
+     * @param request
+     *            The request
+     * @return the body, or null if it could not be read
+     */
+    private static String readBody( HttpServletRequest request )
+    {
         try
         {
             StringBuilder sb = new StringBuilder( );
             String line = null;
-            
+
             BufferedReader reader = request.getReader( );
             while ( ( line = reader.readLine( ) ) != null )
                 sb.append( line );
 
-            strJson = sb.toString( );
-            
+            return sb.toString( );
         }
         catch( IOException e )
         {
-            return responseJSON( JsonUtil.buildJsonResponse( new ErrorJsonResponse( "An error occured while receiving the response" ) ) );
-        }
-
-        if ( updateSubscriptions( strJson, mailUser ) )
-        {
-            responseJSON( JsonUtil.buildJsonResponse( new ErrorJsonResponse( "An error occured while receiving the response" ) ) );
+            return null;
         }
-        
-        //Remove cache after update subscription
-        BroadcastCacheService.getInstance( ).removeUserSubscription( mailUser );
-        
-        return responseJSON( JsonUtil.buildJsonResponse( new JsonResponse( "ok" ) ) );
     }
 
     /**
@@ -267,25 +463,15 @@ public class BroadcastproxyXPage extends MVCApplication
         {
             JsonNode jsonNodes = new ObjectMapper( ).readTree( jsonResponse );
             String strAccount = jsonNodes.get( JSON_NODE_ACCOUNT ).asText( );
-            
-            if ( StringUtils.isNotEmpty( strAccount ) && !strAccount.equals( "default" )  )
-            {
-                String strAccountId = AppPropertiesService.getProperty( PROPERTY_ACCOUNT_ADDROND_PREFIX + strAccount  ) ;               
-                BroadcastService.getInstance( ).updateArrondissementSubscribtions( userId, jsonResponse, strAccountId );
-            }
-            else
-            {
-                // update subscriptions by feed type
-                BroadcastService.getInstance( ).updateSubscribtions( userId, jsonResponse, PROPERTY_ACCOUNT_ID );               
-            }
+
+            return UserSubscriptionService.getInstance( ).updateUserSubscription( userId, strAccount, jsonResponse, jsonNodes.get( "id" ).asInt( ),
+                    Boolean.valueOf( jsonNodes.get( "active" ).asText( ) ) );
         }
         catch( Exception e )
         {
             AppLogService.error( "An error occured while updating subscriptions : " + e.getMessage( ) );
             return false;
         }
-
-        return true;
     }
 
 }
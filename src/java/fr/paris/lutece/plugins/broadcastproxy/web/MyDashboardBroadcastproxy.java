@@ -38,19 +38,27 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.commons.lang3.StringUtils;
 
 import fr.paris.lutece.plugins.broadcastproxy.business.SubscriptionLinkHome;
+import fr.paris.lutece.plugins.broadcastproxy.business.UserSubscriptionState;
+import fr.paris.lutece.plugins.broadcastproxy.service.AdmissionService;
 import fr.paris.lutece.plugins.broadcastproxy.service.BroadcastService;
+import fr.paris.lutece.plugins.broadcastproxy.service.UserSubscriptionService;
 import fr.paris.lutece.plugins.mydashboard.service.MyDashboardComponent;
 import fr.paris.lutece.portal.service.fileimage.FileImagePublicService;
 import fr.paris.lutece.portal.service.i18n.I18nService;
 import fr.paris.lutece.portal.service.security.LuteceUser;
 import fr.paris.lutece.portal.service.security.SecurityService;
 import fr.paris.lutece.portal.service.template.AppTemplateService;
+import fr.paris.lutece.portal.service.util.AppLogService;
 import fr.paris.lutece.portal.service.util.AppPropertiesService;
 import fr.paris.lutece.portal.util.mvc.utils.MVCMessage;
 import fr.paris.lutece.portal.web.l10n.LocaleService;
@@ -66,11 +74,15 @@ public class MyDashboardBroadcastproxy extends MyDashboardComponent
 
     // PROPERTIES
     private static final String PROPERTY_MYDASHBOARD_DESCRIPTION = "broadcastproxy.component.broadcastproxy.description";
+    private static final String PROPERTY_EMBED_ENABLED = "broadcastproxy.mydashboard.embed.enabled";
+    private static final String PROPERTY_EMBED_WAIT = "broadcastproxy.mydashboard.embed.wait";
+    private static final long DEFAULT_EMBED_WAIT = 200;
     // Markers
     private static final String MARK_BROADCASTPROXY = "broadcastproxy";
     private static final String MARK_LUTECE_USER = "user";
     private static final String MARK_INFOS = "infos";
     private static final String MARK_LIST_SUBSCRIPTIONS = "listSubscriptions";
+    private static final String MARK_USER_SUBSCRIPTION_IDS = "userSubscriptionIds";
 
     // instance variables
     private List<ErrorMessage> _listInfos = new ArrayList<>( );
@@ -111,12 +123,29 @@ public class MyDashboardBroadcastproxy extends MyDashboardComponent
                     userMail = _luteceUser.getUserInfo( mailUserInfoKey );
                 }
             }
+            CompletableFuture<UserSubscriptionState> futureState = null;
+            if ( !StringUtils.isBlank( userMail ) && AppPropertiesService.getPropertyBoolean( PROPERTY_EMBED_ENABLED, true ) )
+            {
+                futureState = startLoad( userMail );
+            }
+
             FileImagePublicService.init( );
             BroadcastService broadcastService = BroadcastService.getInstance( );
             model.put( MARK_BROADCASTPROXY, broadcastService.getName( ) );
             model.put( MARK_LIST_SUBSCRIPTIONS, SubscriptionLinkHome.getSubscriptionLinksList( ) );
             
             model.put( MARK_INFOS, _listInfos );
+
+            UserSubscriptionState state = waitState( futureState );
+            if ( state != null )
+            {
+                List<Integer> listIds = new ArrayList<>( );
+                for ( int nId : state.getNewsletterIds( ) )
+                {
+                    listIds.add( nId );
+                }
+                model.put( MARK_USER_SUBSCRIPTION_IDS, listIds );
+            }
         }
 
         HtmlTemplate t = AppTemplateService.getTemplate( TEMPLATE_DASHBOARD, LocaleService.getUserSelectedLocale( request ), model );
@@ -124,6 +153,76 @@ public class MyDashboardBroadcastproxy extends MyDashboardComponent
         return t.getHtml( );
     }
 
+    /**
+     * Get the subscriptions of the user : a missing state is loaded while the page is built only if the admission control allows a provider call,
+     * otherwise the page loads them itself
+     * 
+     * @param strUserMail
+     *            the user email
+     * @return the subscriptions, null if they are not cached and the provider can't be called
+     */
+    private static CompletableFuture<UserSubscriptionState> startLoad( String strUserMail )
+    {
+        UserSubscriptionService service = UserSubscriptionService.getInstance( );
+        if ( service.isCached( strUserMail ) )
+        {
+            return service.getUserSubscriptionStateAsync( strUserMail );
+        }
+        if ( !AdmissionService.getInstance( ).tryAcquire( ) )
+        {
+            return null;
+        }
+
+        CompletableFuture<UserSubscriptionState> future;
+        try
+        {
+            future = service.getUserSubscriptionStateAsync( strUserMail );
+        }
+        catch( RuntimeException e )
+        {
+            AdmissionService.getInstance( ).release( );
+            throw e;
+        }
+        // The permit is held until the load is done, even if the page no longer waits for it
+        future.whenComplete( ( state, e ) -> AdmissionService.getInstance( ).release( ) );
+
+        return future;
+    }
+
+    /**
+     * Wait a short time for the subscriptions of the user, the page loads them itself if they are not available
+     * 
+     * @param futureState
+     *            the subscriptions, may be null
+     * @return the subscriptions, null if they are not available in time
+     */
+    private static UserSubscriptionState waitState( CompletableFuture<UserSubscriptionState> futureState )
+    {
+        if ( futureState == null )
+        {
+            return null;
+        }
+
+        try
+        {
+            return futureState.get( AppPropertiesService.getPropertyLong( PROPERTY_EMBED_WAIT, DEFAULT_EMBED_WAIT ), TimeUnit.MILLISECONDS );
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+        }
+        catch( TimeoutException e )
+        {
+            // The load goes on in the background and is shared with the request of the page
+        }
+        catch( ExecutionException e )
+        {
+            AppLogService.error( "Error occured while getting the subscriptions of the dashboard : " + e.getMessage( ), e );
+        }
+
+        return null;
+    }
+
     @Override
     public String getComponentId( )
     {
@@ -16,3 +16,45 @@ interest_id int default '0' NOT NULL,
 enabled smallint default '0',
 PRIMARY KEY (id_subscription_link)
 );
+
+--
+-- Structure for table broadcastproxy_catalog_snapshot
+--
+
+DROP TABLE IF EXISTS broadcastproxy_catalog_snapshot;
+CREATE TABLE broadcastproxy_catalog_snapshot (
+account_id varchar(255) default '' NOT NULL,
+subscriptions long varchar NOT NULL,
+interests long varchar NOT NULL,
+fingerprint varchar(64) default NULL,
+date_update timestamp default CURRENT_TIMESTAMP NOT NULL,
+PRIMARY KEY (account_id)
+);
+
+--
+-- Structure for table broadcastproxy_lease
+--
+
+DROP TABLE IF EXISTS broadcastproxy_lease;
+CREATE TABLE broadcastproxy_lease (
+name varchar(255) default '' NOT NULL,
+owner varchar(255) default '' NOT NULL,
+date_expiration timestamp default CURRENT_TIMESTAMP NOT NULL,
+PRIMARY KEY (name)
+);
+
+--
+-- Structure for table broadcastproxy_cache_invalidation
+--
+
+DROP TABLE IF EXISTS broadcastproxy_cache_invalidation;
+CREATE TABLE broadcastproxy_cache_invalidation (
+id_cache_invalidation int AUTO_INCREMENT,
+user_id varchar(255) default '' NOT NULL,
+account_id varchar(255) default '' NOT NULL,
+node_id varchar(255) default '' NOT NULL,
+date_creation timestamp default CURRENT_TIMESTAMP NOT NULL,
+PRIMARY KEY (id_cache_invalidation)
+);
+
+CREATE INDEX index_broadcastproxy_cache_invalidation_date ON broadcastproxy_cache_invalidation (date_creation);
@@ -0,0 +1,4 @@
+<%@ page contentType="application/json; charset=UTF-8" trimDirectiveWhitespaces="true" %>
+<%@ page errorPage="../../ErrorPage.jsp" %>
+<jsp:useBean id="manageBroadcastProxy" scope="session" class="fr.paris.lutece.plugins.broadcastproxy.web.BroadcastproxyJspBean" />
+<%= manageBroadcastProxy.getCacheMetricsJson( request ) %>